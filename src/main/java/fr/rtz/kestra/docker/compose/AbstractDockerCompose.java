@@ -3,7 +3,11 @@ package fr.rtz.kestra.docker.compose;
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.property.Property;
 import io.kestra.core.models.tasks.Task;
+import io.kestra.core.models.tasks.runners.AbstractLogConsumer;
 import io.kestra.core.runners.RunContext;
+import io.kestra.plugin.core.runner.Process;
+import io.kestra.plugin.scripts.exec.scripts.models.ScriptOutput;
+import io.kestra.plugin.scripts.exec.scripts.runners.CommandsWrapper;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -11,9 +15,17 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 import lombok.experimental.SuperBuilder;
 
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 
 @SuperBuilder
@@ -23,36 +35,173 @@ import java.util.Map;
 @NoArgsConstructor
 public abstract class AbstractDockerCompose extends Task {
 
-    private final static String DOCKER_HOST = "DOCKER_HOST";
     private final static String COMPOSE_STATUS_STDOUT = "COMPOSE_STATUS_STDOUT";
 
+    protected final static String DEFAULT_COMPOSE_BINARY = "docker-compose";
+    protected final static String PROJECT_LABEL = "com.docker.compose.project";
+    protected final static String SERVICE_LABEL = "com.docker.compose.service";
+    protected final static String CONTAINER_NUMBER_LABEL = "com.docker.compose.container-number";
+
     @Schema(
         title = "Docker Host",
-        description = "The target Docker Engine host."
+        description = """
+            The target Docker Engine host, defaults to the `DOCKER_HOST` variable of the worker, else to the current docker \
+            context for docker-compose and to the local socket for the Engine API.
+            Tasks calling the Engine API directly, i.e. `Exec`, `Snapshot`, `Restore` and rolling `Scale`, only support \
+            `unix://` sockets and plain `tcp://` hosts: `ssh://` hosts and TLS hosts, i.e. `https://` hosts or `tcp://` ones \
+            with `DOCKER_TLS_VERIFY` set on the worker, are rejected. Forward the remote socket through an SSH tunnel instead.
+            """
     )
     protected Property<String> dockerHost;
 
     @Schema(
         title = "Docker Compose project name",
-        description = "The project name is used to group containers under a single name. It is used as a prefix for container names and networks created by Docker Compose.",
-        requiredMode = Schema.RequiredMode.REQUIRED
+        description = """
+            The project name is used to group containers under a single name. It is used as a prefix for container names and networks created by Docker Compose.
+            Required, except for the steps of a `Session`, which default to the project name of the session."""
     )
     protected Property<String> projectName;
 
+    @Schema(
+        title = "Docker Compose binary",
+        description = "Name or path of the docker-compose executable, defaults to `docker-compose`"
+    )
+    protected Property<String> composeBinary;
+
+    /**
+     * @return the project name of the task, or the one of the enclosing session when not set.
+     */
+    protected String renderProjectName(RunContext ctx) throws IllegalVariableEvaluationException {
+        return ctx.render(this.projectName).as(String.class)
+            .or(() -> ComposeContext.of(ctx).map(ComposeContext::getProjectName))
+            .orElseThrow(() -> new IllegalArgumentException("`projectName` is required, on the task or its session"));
+    }
+
+    /**
+     * @return the docker host of the task, or the one of the enclosing session when not set.
+     */
+    protected Optional<String> renderDockerHost(RunContext ctx) throws IllegalVariableEvaluationException {
+        return ctx.render(this.dockerHost).as(String.class)
+            .or(() -> ComposeContext.of(ctx).map(ComposeContext::getDockerHost));
+    }
+
     protected void appendDockerComposeEnv(RunContext ctx, Map<String, String> env) throws IllegalVariableEvaluationException {
-        // Override docker host if set
-        final var dockerHost = ctx.render(this.dockerHost).as(String.class).orElse("");
-        env.put(DOCKER_HOST, dockerHost);
+        // Session variables, overridden by the task ones
+        ComposeContext.of(ctx).ifPresent(session -> session.getEnv().forEach(env::putIfAbsent));
+        // Same docker host as the Engine API client when set, the current docker context otherwise
+        DockerEngineClient.configuredHost(this.renderDockerHost(ctx).orElse(null))
+            .ifPresent(host -> env.put(DockerEngineClient.DOCKER_HOST, host));
         // Redirect docker-compose logs to stdout if not set
         if (!env.containsKey(COMPOSE_STATUS_STDOUT)) {
             env.put(COMPOSE_STATUS_STDOUT, "1");
         }
     }
 
+    /**
+     * @return a client to be closed by the caller, sharing the connections of the enclosing session if targeting the same host.
+     */
+    protected DockerEngineClient engineClient(RunContext ctx) throws IllegalVariableEvaluationException {
+        final var dockerHost = ctx.render(this.dockerHost).as(String.class);
+        final var session = ComposeContext.of(ctx);
+        if (session.isPresent() && dockerHost.map(host -> host.equals(session.get().getDockerHost())).orElse(true)) {
+            return session.get().client();
+        }
+        return DockerEngineClient.of(dockerHost.orElse(null));
+    }
+
+    /**
+     * Runs a command with the given log consumer, or the default one when null, and fails on non-zero exit code.
+     */
+    protected ScriptOutput execute(RunContext ctx, Map<String, String> env, Object inputFiles, List<String> cmds, AbstractLogConsumer logConsumer) throws Exception {
+        ctx.logger().info("Running: {}", cmds);
+        var commands = new CommandsWrapper(ctx)
+            .withEnv(env)
+            .withInputFiles(inputFiles)
+            .withCommands(Property.of(cmds))
+            .withTaskRunner(Process.instance());
+        if (logConsumer != null) {
+            commands = commands.withLogConsumer(logConsumer);
+        }
+        final var result = commands.run();
+        if (result.getExitCode() != 0) {
+            throw new IllegalStateException("Command " + cmds + " failed with exit code " + result.getExitCode());
+        }
+        return result;
+    }
+
+    /**
+     * Runs the given jobs on virtual threads, at most {@code parallelism} at a time, and fails fast on the first error.
+     */
+    protected <T> List<T> runConcurrently(int parallelism, List<Callable<T>> jobs) throws Exception {
+        final var permits = new Semaphore(Math.max(1, parallelism));
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var futures = new ArrayList<Future<T>>();
+            for (Callable<T> job : jobs) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return job.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            final var results = new ArrayList<T>();
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    futures.forEach(f -> f.cancel(true));
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            return results;
+        }
+    }
+
+    /**
+     * @return a copy of the given output with additional variables and output files, the output ones take precedence.
+     */
+    protected static ScriptOutput withOutputs(ScriptOutput output, Map<String, Object> vars, Map<String, URI> outputFiles) {
+        final var mergedVars = new HashMap<>(vars);
+        if (output.getVars() != null) {
+            mergedVars.putAll(output.getVars());
+        }
+        final var mergedFiles = new HashMap<>(outputFiles);
+        if (output.getOutputFiles() != null) {
+            mergedFiles.putAll(output.getOutputFiles());
+        }
+        return ScriptOutput.builder()
+            .exitCode(output.getExitCode())
+            .stdOutLineCount(output.getStdOutLineCount())
+            .stdErrLineCount(output.getStdErrLineCount())
+            .warningOnStdErr(output.getWarningOnStdErr())
+            .taskRunner(output.getTaskRunner())
+            .vars(mergedVars)
+            .outputFiles(mergedFiles)
+            .build();
+    }
+
+    /**
+     * Runs the command with the given throttled log consumer, exposing the dropped lines as an output file.
+     */
+    protected static ScriptOutput runThrottled(CommandsWrapper commands, ThrottledLogConsumer logConsumer) throws Exception {
+        final ScriptOutput output;
+        try (logConsumer) {
+            output = commands.withLogConsumer(logConsumer).run();
+        }
+        return logConsumer.getSpilled() == null ?
+            output :
+            withOutputs(output, Map.of(), Map.of(ThrottledLogConsumer.SPILL_FILE, logConsumer.getSpilled()));
+    }
+
     protected List<String> initCmd(RunContext ctx) throws IllegalVariableEvaluationException {
-        final var projectName = ctx.render(this.projectName).as(String.class).orElseThrow();
+        final var projectName = this.renderProjectName(ctx);
+        final var binary = ctx.render(this.composeBinary).as(String.class)
+            .or(() -> ComposeContext.of(ctx).map(ComposeContext::getComposeBinary))
+            .orElse(DEFAULT_COMPOSE_BINARY);
         return new ArrayList<>() {{
-            add("docker-compose");
+            add(binary);
             add("--project-name");
             add(projectName);
         }};
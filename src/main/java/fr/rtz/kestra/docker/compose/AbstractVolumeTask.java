@@ -0,0 +1,106 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Base class of tasks moving volume contents through helper containers, using the Docker Engine API.
+ */
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+public abstract class AbstractVolumeTask extends AbstractDockerCompose {
+
+    protected static final String VOLUME_LABEL = "com.docker.compose.volume";
+    protected static final String HELPER_LABEL = "fr.rtz.kestra.docker.compose.helper";
+    protected static final String MOUNT_PATH = "/volume";
+
+    @Schema(
+        title = "Helper image",
+        description = "Image of the short-lived containers mounting the volumes, it is never started"
+    )
+    @Builder.Default
+    protected Property<String> image = Property.of("busybox:latest");
+
+    @Schema(
+        title = "Maximum number of volumes processed concurrently"
+    )
+    @Builder.Default
+    protected Property<Integer> parallelism = Property.of(4);
+
+    protected void pullImage(RunContext ctx, DockerEngineClient client) throws IllegalVariableEvaluationException, IOException {
+        final var image = ctx.render(this.image).as(String.class).orElseThrow();
+        try (var inspect = client.request("GET", "/images/" + image + "/json", null)) {
+            if (inspect.isSuccess()) {
+                // Read to the end so that the connection is reused
+                inspect.body().transferTo(OutputStream.nullOutputStream());
+                return;
+            }
+        }
+        ctx.logger().info("Pulling helper image {}", image);
+        try (var pull = client.request("POST", "/images/create?" + DockerEngineClient.query("fromImage", image), null)) {
+            // The pull completes when its progress stream ends
+            pull.ensureSuccess().body().transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * Creates, without starting it, a container mounting the given volume under {@link #MOUNT_PATH}.
+     * @return the container id
+     */
+    protected String createHelper(RunContext ctx, DockerEngineClient client, String volume, boolean readOnly) throws IllegalVariableEvaluationException, IOException {
+        final var image = ctx.render(this.image).as(String.class).orElseThrow();
+        final var container = client.json("POST", "/containers/create", Map.of(
+            "Image", image,
+            "Cmd", List.of("true"),
+            "Labels", Map.of(HELPER_LABEL, volume),
+            "HostConfig", Map.of("Binds", List.of(volume + ":" + MOUNT_PATH + (readOnly ? ":ro" : "")))
+        ));
+        return container.get("Id").asText();
+    }
+
+    protected void removeHelper(RunContext ctx, DockerEngineClient client, String containerId) {
+        try {
+            client.json("DELETE", "/containers/" + containerId + "?force=true&v=false", null);
+        } catch (IOException e) {
+            ctx.logger().warn("Unable to remove helper container {}: {}", containerId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the named volumes of the project, keyed by their name in the compose file.
+     */
+    protected Map<String, String> projectVolumes(DockerEngineClient client, String projectName) throws IOException {
+        final var response = client.json("GET", "/volumes?" + DockerEngineClient.query(
+            "filters", Map.of("label", List.of(PROJECT_LABEL + "=" + projectName))
+        ), null);
+        final var volumes = new TreeMap<String, String>();
+        for (JsonNode volume : response.path("Volumes")) {
+            final var name = volume.path("Name").asText();
+            volumes.put(volume.path("Labels").path(VOLUME_LABEL).asText(name), name);
+        }
+        return volumes;
+    }
+
+    protected <T> List<T> runConcurrently(RunContext ctx, List<Callable<T>> jobs) throws Exception {
+        return this.runConcurrently(ctx.render(this.parallelism).as(Integer.class).orElse(4), jobs);
+    }
+}
@@ -0,0 +1,72 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.runners.RunContext;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Properties of a {@link Session}, rendered once and shared by its steps, along with an Engine API client whose
+ * connections are reused from one step to the next.
+ * Steps run with the run context of the session, which is used to look the context up.
+ */
+@Getter
+class ComposeContext implements Closeable {
+
+    private static final Map<RunContext, ComposeContext> SESSIONS = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private final RunContext runContext;
+    private final String projectName;
+    private final String dockerHost;
+    private final String composeBinary;
+    private final Map<String, String> env;
+    @Getter(AccessLevel.NONE)
+    private DockerEngineClient client;
+
+    private ComposeContext(RunContext runContext, String projectName, String dockerHost, String composeBinary, Map<String, String> env) {
+        this.runContext = runContext;
+        this.projectName = projectName;
+        this.dockerHost = dockerHost;
+        this.composeBinary = composeBinary;
+        this.env = env;
+    }
+
+    /**
+     * Makes the given properties available to the tasks run with the given run context, until the context is closed.
+     */
+    static ComposeContext attach(RunContext runContext, String projectName, String dockerHost, String composeBinary, Map<String, String> env) {
+        final var context = new ComposeContext(runContext, projectName, dockerHost, composeBinary, Map.copyOf(env));
+        if (SESSIONS.putIfAbsent(runContext, context) != null) {
+            throw new IllegalStateException("A compose session is already running in this context");
+        }
+        return context;
+    }
+
+    static Optional<ComposeContext> of(RunContext runContext) {
+        return Optional.ofNullable(SESSIONS.get(runContext));
+    }
+
+    /**
+     * @return a client sharing the connections of the session, closing it is a no-op.
+     */
+    synchronized DockerEngineClient client() {
+        if (this.client == null) {
+            this.client = DockerEngineClient.of(this.dockerHost);
+        }
+        return this.client.shared();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        SESSIONS.remove(this.runContext, this);
+        if (this.client != null) {
+            this.client.close();
+        }
+    }
+}
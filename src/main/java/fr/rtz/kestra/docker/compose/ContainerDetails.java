@@ -0,0 +1,175 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.runners.RunContext;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runtime details of containers, inspected through the Engine API over a single kept alive connection.
+ * Restarts keep the container id and state, so running containers are inspected on every poll. Only the details of
+ * stopped containers, which can't change until their state does, and the digests of images are cached.
+ */
+record ContainerDetails(
+    String state,
+    Integer exitCode,
+    Instant fetchedAt,
+    String imageId,
+    List<String> ports,
+    Instant startedAt,
+    Integer restartCount,
+    Boolean oomKilled
+) {
+
+    private static final Set<String> STOPPED_STATES = Set.of("created", "exited", "dead");
+
+    // Shared by every trigger of the worker, keyed by container id and image id
+    private static final Map<String, ContainerDetails> CONTAINERS = new ConcurrentHashMap<>();
+    private static final Map<String, ImageDetails> IMAGES = new ConcurrentHashMap<>();
+
+    /**
+     * @param repoDigests digests of the image in the registries it was pulled from or pushed to, immutable for an image id.
+     */
+    private record ImageDetails(Instant fetchedAt, List<String> repoDigests) {
+    }
+
+    /**
+     * @return the given containers with their runtime details, containers that can't be inspected are left as is.
+     */
+    static List<Ps.Output.ContainerInfo> enrich(RunContext runContext, String dockerHost, List<Ps.Output.ContainerInfo> containers, Duration ttl) {
+        final var now = Instant.now();
+        CONTAINERS.values().removeIf(details -> details.fetchedAt().plus(ttl).isBefore(now));
+        IMAGES.values().removeIf(details -> details.fetchedAt().plus(ttl).isBefore(now));
+
+        final var details = new HashMap<String, ContainerDetails>();
+        final var images = new HashMap<String, ImageDetails>();
+        var hits = 0;
+        var misses = 0;
+        try (var client = DockerEngineClient.of(dockerHost)) {
+            for (Ps.Output.ContainerInfo container : containers) {
+                if (container.getId() == null) {
+                    continue;
+                }
+                final var cached = CONTAINERS.get(container.getId());
+                if (cached != null && cached.matches(container)) {
+                    hits++;
+                    details.put(container.getId(), cached);
+                    continue;
+                }
+                misses++;
+                final var inspected = inspect(runContext, client, container, now);
+                if (inspected != null) {
+                    details.put(container.getId(), inspected);
+                    if (STOPPED_STATES.contains(inspected.state())) {
+                        CONTAINERS.put(container.getId(), inspected);
+                    }
+                }
+            }
+            for (ContainerDetails inspected : details.values()) {
+                if (inspected.imageId() == null || images.containsKey(inspected.imageId())) {
+                    continue;
+                }
+                final var cached = IMAGES.get(inspected.imageId());
+                if (cached != null) {
+                    hits++;
+                    images.put(inspected.imageId(), cached);
+                    continue;
+                }
+                misses++;
+                final var image = inspectImage(runContext, client, inspected.imageId(), now);
+                if (image != null) {
+                    images.put(inspected.imageId(), image);
+                    IMAGES.put(inspected.imageId(), image);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            runContext.logger().warn("Unable to inspect containers, they won't be enriched: {}", e.getMessage());
+        }
+        runContext.metric(Counter.of("enrich.cache.hits", hits));
+        runContext.metric(Counter.of("enrich.cache.misses", misses));
+
+        return containers.stream()
+            .map(c -> {
+                final var found = c.getId() == null ? null : details.get(c.getId());
+                return found == null ? c : found.applyTo(c, found.imageId() == null ? null : images.get(found.imageId()), now);
+            })
+            .toList();
+    }
+
+    /**
+     * Details of stopped containers are valid as long as the state and exit code reported by docker-compose are the same.
+     */
+    private boolean matches(Ps.Output.ContainerInfo container) {
+        return Objects.equals(this.state, container.getState()) && Objects.equals(this.exitCode, container.getExitCode());
+    }
+
+    private static ContainerDetails inspect(RunContext runContext, DockerEngineClient client, Ps.Output.ContainerInfo container, Instant now) {
+        try {
+            return parse(client.json("GET", "/containers/" + container.getId() + "/json", null), container, now);
+        } catch (IOException e) {
+            // Containers removed since the poll are not found, the others are still enriched
+            runContext.logger().warn("Container {} could not be inspected: {}", container.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static ImageDetails inspectImage(RunContext runContext, DockerEngineClient client, String imageId, Instant now) {
+        try {
+            final var repoDigests = new ArrayList<String>();
+            client.json("GET", "/images/" + imageId + "/json", null).path("RepoDigests")
+                .forEach(digest -> repoDigests.add(digest.asText()));
+            return new ImageDetails(now, repoDigests);
+        } catch (IOException e) {
+            runContext.logger().warn("Image {} could not be inspected: {}", imageId, e.getMessage());
+            return null;
+        }
+    }
+
+    private static ContainerDetails parse(JsonNode node, Ps.Output.ContainerInfo container, Instant now) {
+        final var ports = new ArrayList<String>();
+        node.path("NetworkSettings").path("Ports").fields().forEachRemaining(port -> {
+            for (JsonNode binding : port.getValue()) {
+                ports.add(binding.path("HostIp").asText() + ":" + binding.path("HostPort").asText() + "->" + port.getKey());
+            }
+        });
+        Instant startedAt = null;
+        try {
+            startedAt = Instant.parse(node.path("State").path("StartedAt").asText());
+        } catch (DateTimeParseException e) {
+            // Never started
+        }
+        return new ContainerDetails(
+            container.getState(),
+            container.getExitCode(),
+            now,
+            node.path("Image").asText(null),
+            ports,
+            startedAt == null || startedAt.getEpochSecond() <= 0 ? null : startedAt,
+            node.path("RestartCount").isNumber() ? node.path("RestartCount").asInt() : null,
+            node.path("State").path("OOMKilled").isBoolean() ? node.path("State").path("OOMKilled").asBoolean() : null
+        );
+    }
+
+    private Ps.Output.ContainerInfo applyTo(Ps.Output.ContainerInfo container, ImageDetails image, Instant now) {
+        return container.toBuilder()
+            .imageId(this.imageId)
+            .repoDigests(image == null ? null : image.repoDigests())
+            .ports(this.ports)
+            .startedAt(this.startedAt)
+            .uptime("running".equalsIgnoreCase(container.getState()) && this.startedAt != null ? Duration.between(this.startedAt, now) : null)
+            .restartCount(this.restartCount)
+            .oomKilled(this.oomKilled)
+            .build();
+    }
+}
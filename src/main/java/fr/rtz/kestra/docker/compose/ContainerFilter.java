@@ -0,0 +1,141 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.AssertTrue;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Getter
+@Builder
+@Jacksonized
+@EqualsAndHashCode
+public class ContainerFilter {
+
+    private static final int MAX_COMPILED = 256;
+
+    // Triggers are deserialized again for each evaluation, compiled predicates are shared by value instead.
+    // Bounded as every revision of every flow brings its own filters, the least recently used ones are evicted.
+    private static final Map<ContainerFilter, Predicate<Ps.Output.ContainerInfo>> COMPILED = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ContainerFilter, Predicate<Ps.Output.ContainerInfo>> eldest) {
+                return this.size() > MAX_COMPILED;
+            }
+        }
+    );
+
+    @Schema(
+        title = "Container states to match",
+        description = "e.g. `running`, `exited`, `restarting`, `paused`, `dead`, `created`"
+    )
+    private List<String> states;
+
+    @Schema(
+        title = "Container health values to match",
+        description = "e.g. `healthy`, `unhealthy`, `starting`, `none` for containers without health check"
+    )
+    private List<String> healths;
+
+    @Schema(
+        title = "Exit codes to match",
+        description = "Single exit codes or inclusive ranges, e.g. `1-255`"
+    )
+    private List<String> exitCodes;
+
+    @Schema(
+        title = "Regular expression the service name must match"
+    )
+    private String service;
+
+    @Schema(
+        title = "Minimum number of matching containers required to trigger a flow"
+    )
+    @Builder.Default
+    private Integer minCount = 1;
+
+    /**
+     * @return the containers matching every criterion of this filter.
+     */
+    public List<Ps.Output.ContainerInfo> filter(List<Ps.Output.ContainerInfo> containers) {
+        final var predicate = COMPILED.computeIfAbsent(this, ContainerFilter::compile);
+        return containers.stream().filter(predicate).toList();
+    }
+
+    public boolean isSatisfiedBy(List<Ps.Output.ContainerInfo> matched) {
+        return matched.size() >= Objects.requireNonNullElse(this.minCount, 1);
+    }
+
+    /**
+     * Validates the criteria when the flow is saved, rather than failing at every poll.
+     */
+    @JsonIgnore
+    @AssertTrue(message = "`service` must be a valid regular expression and `exitCodes` valid exit codes or ascending ranges")
+    public boolean isValid() {
+        try {
+            this.compile();
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private Predicate<Ps.Output.ContainerInfo> compile() {
+        final List<Predicate<Ps.Output.ContainerInfo>> predicates = new ArrayList<>();
+        if (this.states != null && !this.states.isEmpty()) {
+            final var states = lowerCase(this.states);
+            predicates.add(c -> c.getState() != null && states.contains(c.getState().toLowerCase()));
+        }
+        if (this.healths != null && !this.healths.isEmpty()) {
+            final var healths = lowerCase(this.healths);
+            predicates.add(c -> healths.contains(c.getHealth() == null || c.getHealth().isEmpty() ? "none" : c.getHealth().toLowerCase()));
+        }
+        if (this.exitCodes != null && !this.exitCodes.isEmpty()) {
+            final var ranges = this.exitCodes.stream().map(ExitCodeRange::parse).toList();
+            predicates.add(c -> c.getExitCode() != null && ranges.stream().anyMatch(r -> r.contains(c.getExitCode())));
+        }
+        if (this.service != null) {
+            final var pattern = Pattern.compile(this.service);
+            predicates.add(c -> c.getService() != null && pattern.matcher(c.getService()).matches());
+        }
+        return predicates.stream().reduce(c -> true, Predicate::and);
+    }
+
+    private static Set<String> lowerCase(List<String> values) {
+        return values.stream().map(String::toLowerCase).collect(Collectors.toUnmodifiableSet());
+    }
+
+    private record ExitCodeRange(int from, int to) {
+        static ExitCodeRange parse(String value) {
+            final var bounds = value.trim().split("\\s*-\\s*", 2);
+            try {
+                final var from = Integer.parseInt(bounds[0]);
+                final var to = bounds.length == 1 ? from : Integer.parseInt(bounds[1]);
+                if (from > to) {
+                    // Would silently match nothing
+                    throw new IllegalArgumentException("Inverted exit code range '" + value + "'");
+                }
+                return new ExitCodeRange(from, to);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid exit code range '" + value + "'", e);
+            }
+        }
+
+        boolean contains(int exitCode) {
+            return exitCode >= this.from && exitCode <= this.to;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.models.tasks.runners.AbstractLogConsumer;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Log consumer collecting docker-compose output lines instead of logging them.
+ */
+@Getter
+class DockerComposeLogConsumer extends AbstractLogConsumer {
+
+    private final Collection<String> lines = new ArrayList<>();
+    private final Collection<String> stdOutLines = new ArrayList<>();
+
+    @Override
+    public void accept(String line, Boolean isStdErr, Instant instant) {
+        this.accept(line, isStdErr);
+    }
+
+    @Override
+    public void accept(String line, Boolean isStdErr) {
+        if (isStdErr) {
+            stdErrCount.getAndIncrement();
+        } else {
+            stdOutCount.getAndIncrement();
+            this.stdOutLines.add(line);
+        }
+        this.lines.add(line);
+    }
+}
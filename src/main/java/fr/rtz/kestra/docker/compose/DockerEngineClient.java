@@ -0,0 +1,451 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Minimal Docker Engine API client, talking HTTP/1.1 over the Docker socket.
+ * It only covers what docker-compose can't do for us, e.g. streaming archives in and out of containers.
+ * Connections whose response was fully read are kept alive and reused by the following requests.
+ */
+class DockerEngineClient implements Closeable {
+
+    static final String DEFAULT_HOST = "unix:///var/run/docker.sock";
+    static final String DOCKER_HOST = "DOCKER_HOST";
+    static final String DOCKER_TLS_VERIFY = "DOCKER_TLS_VERIFY";
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Connector connector;
+    private final Deque<Connection> idle;
+    private final boolean owner;
+
+    DockerEngineClient(Connector connector) {
+        this(connector, new ConcurrentLinkedDeque<>(), true);
+    }
+
+    private DockerEngineClient(Connector connector, Deque<Connection> idle, boolean owner) {
+        this.connector = connector;
+        this.idle = idle;
+        this.owner = owner;
+    }
+
+    /**
+     * @return the given Docker host, else the DOCKER_HOST variable of the worker, empty when neither is set so that
+     * docker-compose falls back on the current docker context.
+     */
+    static Optional<String> configuredHost(String dockerHost) {
+        if (dockerHost != null && !dockerHost.isBlank()) {
+            return Optional.of(dockerHost);
+        }
+        final var fromEnv = System.getenv(DOCKER_HOST);
+        return fromEnv == null || fromEnv.isBlank() ? Optional.empty() : Optional.of(fromEnv);
+    }
+
+    /**
+     * Resolves the Docker host of the Engine API the same way as docker-compose, falling back on the local socket as
+     * docker contexts can't be read here.
+     */
+    static String resolveHost(String dockerHost) {
+        return configuredHost(dockerHost).orElse(DEFAULT_HOST);
+    }
+
+    /**
+     * @param dockerHost the Docker host, resolved with {@link #resolveHost(String)}.
+     * @throws IllegalArgumentException for SSH and TLS hosts, which are only supported by docker-compose.
+     */
+    static DockerEngineClient of(String dockerHost) {
+        final var resolved = resolveHost(dockerHost);
+        final var host = URI.create(resolved);
+        final var tlsVerify = System.getenv(DOCKER_TLS_VERIFY);
+        if ("ssh".equals(host.getScheme()) || "https".equals(host.getScheme()) ||
+            ("tcp".equals(host.getScheme()) && tlsVerify != null && !tlsVerify.isBlank())) {
+            throw new IllegalArgumentException("Docker host '" + resolved + "' is not supported by the Engine API client, " +
+                "only unix:// sockets and plain tcp:// hosts are, e.g. through an SSH tunnel to the remote socket");
+        }
+        return switch (host.getScheme()) {
+            case "unix" -> new DockerEngineClient(() -> {
+                final var channel = SocketChannel.open(UnixDomainSocketAddress.of(host.getPath()));
+                return new Connection(Channels.newInputStream(channel), Channels.newOutputStream(channel), channel);
+            });
+            case "tcp", "http" -> new DockerEngineClient(() -> {
+                final var socket = new Socket();
+                socket.connect(new InetSocketAddress(host.getHost(), host.getPort() < 0 ? 2375 : host.getPort()));
+                return new Connection(socket.getInputStream(), socket.getOutputStream(), socket);
+            });
+            default -> throw new IllegalArgumentException("Unsupported Docker host '" + resolved + "'");
+        };
+    }
+
+    static String query(String name, Object value) {
+        final var rendered = value instanceof String s ? s : toJson(value);
+        return name + "=" + URLEncoder.encode(rendered, StandardCharsets.UTF_8);
+    }
+
+    static String toJson(Object value) {
+        try {
+            return MAPPER.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Sends a request with an optional JSON body and parses the JSON response, failing on non 2xx status.
+     */
+    JsonNode json(String method, String path, Object body) throws IOException {
+        try (var response = this.request(method, path, body)) {
+            response.ensureSuccess();
+            final var content = response.body().readAllBytes();
+            return content.length == 0 ? MAPPER.nullNode() : MAPPER.readTree(content);
+        }
+    }
+
+    Response request(String method, String path, Object body) throws IOException {
+        final var content = body == null ? null : toJson(body).getBytes(StandardCharsets.UTF_8);
+        final var pooled = this.idle.pollFirst();
+        if (pooled != null) {
+            try {
+                return this.send(pooled, method, path, content);
+            } catch (IOException e) {
+                // The daemon closed the idle connection, retry on a new one
+            }
+        }
+        return this.send(this.connector.connect(), method, path, content);
+    }
+
+    private Response send(Connection connection, String method, String path, byte[] content) throws IOException {
+        try {
+            final var out = connection.out();
+            writeHead(out, method, path, content == null ? Map.of() : Map.of(
+                "Content-Type", "application/json",
+                "Content-Length", String.valueOf(content.length)
+            ));
+            if (content != null) {
+                out.write(content);
+            }
+            out.flush();
+            return Response.read(this, connection);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request streaming the given body with chunked transfer encoding.
+     */
+    Response upload(String method, String path, String contentType, InputStream body) throws IOException {
+        final var connection = this.connector.connect();
+        try {
+            final var out = connection.out();
+            writeHead(out, method, path, Map.of(
+                "Content-Type", contentType,
+                "Transfer-Encoding", "chunked"
+            ));
+            final var buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                if (read == 0) {
+                    continue;
+                }
+                out.write((Integer.toHexString(read) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(buffer, 0, read);
+                out.write(CRLF);
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return Response.read(this, connection);
+        } catch (IOException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private static void writeHead(OutputStream out, String method, String path, Map<String, String> headers) throws IOException {
+        final var head = new StringBuilder()
+            .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+            .append("Host: docker\r\n");
+        headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @FunctionalInterface
+    interface Connector {
+        Connection connect() throws IOException;
+    }
+
+    /**
+     * @return a view on this client sharing its idle connections, closing it leaves the connections open.
+     */
+    DockerEngineClient shared() {
+        return new DockerEngineClient(this.connector, this.idle, false);
+    }
+
+    private void release(Connection connection) {
+        this.idle.addFirst(connection);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.owner) {
+            return;
+        }
+        Connection connection;
+        while ((connection = this.idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    static class Connection implements Closeable {
+        private final BufferedInputStream in;
+        private final OutputStream out;
+        private final Closeable resource;
+
+        Connection(InputStream in, OutputStream out, Closeable resource) {
+            // Buffered once per connection as read-ahead bytes may belong to the next response
+            this.in = new BufferedInputStream(in, BUFFER_SIZE);
+            this.out = out;
+            this.resource = resource;
+        }
+
+        InputStream in() {
+            return this.in;
+        }
+
+        OutputStream out() {
+            return this.out;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.resource.close();
+        }
+    }
+
+    static class Response implements Closeable {
+        private final DockerEngineClient client;
+        private final Connection connection;
+        private final int status;
+        private final Map<String, String> headers;
+        private final InputStream body;
+
+        private Response(DockerEngineClient client, Connection connection, int status, Map<String, String> headers, InputStream body) {
+            this.client = client;
+            this.connection = connection;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static Response read(DockerEngineClient client, Connection connection) throws IOException {
+            final var in = connection.in();
+            final var statusLine = readLine(in);
+            final var parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Invalid response from the Docker Engine: " + statusLine);
+            }
+            final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                final var separator = line.indexOf(':');
+                if (separator > 0) {
+                    headers.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+                }
+            }
+            final var status = Integer.parseInt(parts[1]);
+            final InputStream body;
+            if (status == 204 || status == 304) {
+                // Never have a body, even without Content-Length
+                body = new BoundedInputStream(in, 0);
+            } else if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+                body = new ChunkedInputStream(in);
+            } else if (headers.containsKey("Content-Length")) {
+                body = new BoundedInputStream(in, Long.parseLong(headers.get("Content-Length")));
+            } else {
+                // Hijacked or close delimited streams
+                body = in;
+            }
+            return new Response(client, connection, status, headers, body);
+        }
+
+        int status() {
+            return this.status;
+        }
+
+        String header(String name) {
+            return this.headers.get(name);
+        }
+
+        InputStream body() {
+            return this.body;
+        }
+
+        boolean isSuccess() {
+            return this.status >= 200 && this.status < 300;
+        }
+
+        Response ensureSuccess() throws IOException {
+            if (!this.isSuccess() && this.status != 101) {
+                final var message = new String(this.body.readAllBytes(), StandardCharsets.UTF_8);
+                throw new IOException("Docker Engine API call failed with status " + this.status + ": " + message.trim());
+            }
+            return this;
+        }
+
+        /**
+         * Releases the connection for reuse when the body was entirely read, closes it otherwise.
+         */
+        @Override
+        public void close() throws IOException {
+            final var complete = this.body instanceof BoundedInputStream bounded ? bounded.remaining == 0 :
+                this.body instanceof ChunkedInputStream chunked && chunked.eof;
+            if (complete && this.status != 101 && !"close".equalsIgnoreCase(this.headers.get("Connection"))) {
+                this.client.release(this.connection);
+            } else {
+                this.connection.close();
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Unexpected end of stream from the Docker Engine");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final var b = super.read();
+            if (b >= 0) {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final var read = super.read(b, off, (int) Math.min(len, this.remaining));
+            if (read > 0) {
+                this.remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(this.remaining, super.available());
+        }
+    }
+
+    private static class ChunkedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (this.eof) {
+                return false;
+            }
+            if (this.remaining == 0) {
+                var size = readLine(this.in);
+                if (size.isEmpty()) {
+                    // CRLF terminating the previous chunk
+                    size = readLine(this.in);
+                }
+                final var extension = size.indexOf(';');
+                this.remaining = Long.parseLong((extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+                if (this.remaining == 0) {
+                    // Skip the trailers so the connection is positioned on the next response
+                    while (!readLine(this.in).isEmpty()) {
+                    }
+                    this.eof = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!this.nextChunk()) {
+                return -1;
+            }
+            final var b = this.in.read();
+            if (b >= 0) {
+                this.remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!this.nextChunk()) {
+                return -1;
+            }
+            final var read = this.in.read(b, off, (int) Math.min(len, this.remaining));
+            if (read < 0) {
+                throw new EOFException("Unexpected end of chunked stream from the Docker Engine");
+            }
+            this.remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return this.eof ? 0 : (int) Math.min(this.remaining, this.in.available());
+        }
+    }
+}
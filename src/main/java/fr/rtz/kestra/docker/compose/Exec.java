@@ -0,0 +1,264 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Execute a command in running containers",
+    description = """
+        Runs a command in every running replica of a service, or a subset of them, through the Docker Engine API.
+        Replicas are processed concurrently and the task fails if the command exits with a non-zero code in any of them."""
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Run database migrations in a single replica",
+            full = true,
+            code = """
+                id: migrate
+                namespace: company.team
+                tasks:
+                  - id: migrate
+                    type: fr.rtz.kestra.docker.compose.Exec
+                    projectName: my-compose-project
+                    service: api
+                    replicas:
+                      - 1
+                    commands:
+                      - ./manage.py
+                      - migrate
+                """
+        ),
+        @Example(
+            title = "Reload the configuration of every replica, two at a time",
+            full = true,
+            code = """
+                id: reload
+                namespace: company.team
+                tasks:
+                  - id: reload
+                    type: fr.rtz.kestra.docker.compose.Exec
+                    projectName: my-compose-project
+                    service: web
+                    parallelism: 2
+                    commands:
+                      - nginx
+                      - -s
+                      - reload
+                """
+        )
+    }
+)
+public class Exec extends AbstractDockerCompose implements RunnableTask<Exec.Output> {
+
+    @Schema(
+        title = "Service to execute the command in",
+        requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    @NotNull
+    protected Property<String> service;
+
+    @Schema(
+        title = "Replica numbers to execute the command in",
+        description = "Defaults to every running replica of the service"
+    )
+    protected Property<List<Integer>> replicas;
+
+    @Schema(
+        title = "Command to execute, as a list of arguments",
+        requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    @NotNull
+    protected Property<List<String>> commands;
+
+    @Schema(
+        title = "Additional environment variables to set in the command"
+    )
+    protected Property<Map<String, String>> env;
+
+    @Schema(
+        title = "User running the command",
+        description = "Format: `user`, `user:group`, `uid` or `uid:gid`"
+    )
+    protected Property<String> user;
+
+    @Schema(
+        title = "Working directory of the command inside the container"
+    )
+    protected Property<String> workingDir;
+
+    @Schema(
+        title = "Maximum number of replicas executing the command concurrently"
+    )
+    @Builder.Default
+    protected Property<Integer> parallelism = Property.of(4);
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        final var start = Instant.now();
+        try (var client = this.engineClient(runContext)) {
+            final var projectName = this.renderProjectName(runContext);
+            final var service = runContext.render(this.service).as(String.class).orElseThrow();
+            final var replicas = runContext.render(this.replicas).asList(Integer.class);
+
+            final var containers = client.json("GET", "/containers/json?" + DockerEngineClient.query(
+                "filters", Map.of("label", List.of(PROJECT_LABEL + "=" + projectName, SERVICE_LABEL + "=" + service))
+            ), null);
+            final var targets = new ArrayList<JsonNode>();
+            for (JsonNode container : containers) {
+                final var number = container.path("Labels").path(CONTAINER_NUMBER_LABEL).asInt(1);
+                if (replicas.isEmpty() || replicas.contains(number)) {
+                    targets.add(container);
+                }
+            }
+            if (targets.isEmpty()) {
+                throw new IllegalStateException("No running replica of service '" + service + "' in project '" + projectName + "'");
+            }
+
+            final var execConfig = new HashMap<String, Object>();
+            execConfig.put("AttachStdout", true);
+            execConfig.put("AttachStderr", true);
+            execConfig.put("Tty", false);
+            execConfig.put("Cmd", runContext.render(this.commands).asList(String.class));
+            execConfig.put("Env", runContext.render(this.env).asMap(String.class, String.class).entrySet().stream()
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .toList());
+            runContext.render(this.user).as(String.class).ifPresent(user -> execConfig.put("User", user));
+            runContext.render(this.workingDir).as(String.class).ifPresent(dir -> execConfig.put("WorkingDir", dir));
+
+            final var jobs = new ArrayList<Callable<ReplicaResult>>();
+            for (JsonNode container : targets) {
+                jobs.add(() -> this.exec(runContext, client, container, execConfig));
+            }
+            final var results = this.runConcurrently(runContext.render(this.parallelism).as(Integer.class).orElse(4), jobs);
+
+            final var failed = results.stream().filter(r -> r.getExitCode() == null || r.getExitCode() != 0).toList();
+            if (!failed.isEmpty()) {
+                throw new IllegalStateException(failed.size() + " of " + results.size() + " replicas failed: " + failed.stream()
+                    .map(r -> r.getContainer() + " exited with code " + r.getExitCode())
+                    .toList());
+            }
+            return Output.builder()
+                .replicas(results)
+                .duration(Duration.between(start, Instant.now()))
+                .build();
+        }
+    }
+
+    private ReplicaResult exec(RunContext ctx, DockerEngineClient client, JsonNode container, Map<String, Object> execConfig) throws Exception {
+        final var start = Instant.now();
+        final var containerId = container.path("Id").asText();
+        final var name = container.path("Names").path(0).asText(containerId).replaceFirst("^/", "");
+        final var logger = ctx.logger();
+
+        final var execId = client.json("POST", "/containers/" + containerId + "/exec", execConfig).path("Id").asText();
+        final var stdOutCount = new AtomicInteger();
+        final var stdErrCount = new AtomicInteger();
+        try (var response = client.request("POST", "/exec/" + execId + "/start", Map.of("Detach", false, "Tty", false))) {
+            // The response body holds the multiplexed output until the command exits
+            MultiplexedStream.readLines(response.ensureSuccess().body(), (line, isStdErr) -> {
+                if (isStdErr) {
+                    stdErrCount.incrementAndGet();
+                    logger.warn("[{}] {}", name, line);
+                } else {
+                    stdOutCount.incrementAndGet();
+                    logger.info("[{}] {}", name, line);
+                }
+            });
+        }
+        final var inspect = client.json("GET", "/exec/" + execId + "/json", null);
+        final var exitCode = inspect.path("ExitCode").isNumber() ? inspect.path("ExitCode").asInt() : null;
+        final var duration = Duration.between(start, Instant.now());
+        ctx.metric(Timer.of("duration", duration, "container", name));
+
+        return ReplicaResult.builder()
+            .container(name)
+            .id(containerId)
+            .replica(container.path("Labels").path(CONTAINER_NUMBER_LABEL).asInt(1))
+            .exitCode(exitCode)
+            .stdOutLineCount(stdOutCount.get())
+            .stdErrLineCount(stdErrCount.get())
+            .duration(duration)
+            .build();
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Result of each replica."
+        )
+        private final List<ReplicaResult> replicas;
+
+        @Schema(
+            title = "Total duration."
+        )
+        private final Duration duration;
+    }
+
+    @Builder
+    @Getter
+    public static class ReplicaResult {
+        @Schema(
+            title = "Container name."
+        )
+        private final String container;
+
+        @Schema(
+            title = "Container id."
+        )
+        private final String id;
+
+        @Schema(
+            title = "Replica number."
+        )
+        private final Integer replica;
+
+        @Schema(
+            title = "Exit code of the command."
+        )
+        private final Integer exitCode;
+
+        @Schema(
+            title = "Number of lines written to stdout."
+        )
+        private final Integer stdOutLineCount;
+
+        @Schema(
+            title = "Number of lines written to stderr."
+        )
+        private final Integer stdErrLineCount;
+
+        @Schema(
+            title = "Command duration."
+        )
+        private final Duration duration;
+    }
+}
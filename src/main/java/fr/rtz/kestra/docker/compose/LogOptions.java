@@ -0,0 +1,56 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.models.property.Property;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.Duration;
+
+@Getter
+@Builder
+@Jacksonized
+public class LogOptions {
+
+    @Schema(
+        title = "Maximum number of log lines per second and per service",
+        description = "Lines exceeding this rate are sampled, the others are dropped from the Kestra logs"
+    )
+    @Builder.Default
+    private Property<Integer> maxLinesPerSecond = Property.of(500);
+
+    @Schema(
+        title = "Sampling ratio",
+        description = "Once a service exceeds its rate, only one line out of `sampleRatio` is forwarded to the Kestra logs"
+    )
+    @Builder.Default
+    private Property<Integer> sampleRatio = Property.of(100);
+
+    @Schema(
+        title = "Maximum number of lines grouped in a single log entry"
+    )
+    @Builder.Default
+    private Property<Integer> batchSize = Property.of(50);
+
+    @Schema(
+        title = "Maximum delay before a partial batch is emitted",
+        description = "Must be positive"
+    )
+    @Builder.Default
+    private Property<Duration> batchInterval = Property.of(Duration.ofSeconds(1));
+
+    @Schema(
+        title = "Capacity of the buffer between docker-compose output and the Kestra logs",
+        description = "Lines received while the buffer is full are dropped from the Kestra logs"
+    )
+    @Builder.Default
+    private Property<Integer> bufferSize = Property.of(10_000);
+
+    @Schema(
+        title = "Spill dropped lines to internal storage",
+        description = "Write every line that did not reach the Kestra logs into a file uploaded to the internal storage, available as the `docker-compose-dropped.log` output file"
+    )
+    @Builder.Default
+    private Property<Boolean> spill = Property.of(true);
+}
@@ -0,0 +1,103 @@
+package fr.rtz.kestra.docker.compose;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the multiplexed stdout / stderr stream returned by the Docker Engine for attached, non-tty, processes.
+ * Each frame is made of an 8 bytes header, holding the stream type and the payload size, followed by the payload.
+ */
+class MultiplexedStream {
+
+    static final int STDIN = 0;
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    @FunctionalInterface
+    interface LineConsumer {
+        void accept(String line, boolean isStdErr);
+    }
+
+    private MultiplexedStream() {
+    }
+
+    /**
+     * Splits the stream frames into lines, reassembling lines spanning several frames.
+     */
+    static void readLines(InputStream stream, LineConsumer consumer) throws IOException {
+        final var in = new DataInputStream(stream);
+        final var header = new byte[8];
+        final var buffer = new byte[DockerEngineClient.BUFFER_SIZE];
+        final var stdout = new LineBuffer(consumer, false);
+        final var stderr = new LineBuffer(consumer, true);
+        while (true) {
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                break;
+            }
+            final var type = header[0];
+            var remaining = ((header[4] & 0xFF) << 24) | ((header[5] & 0xFF) << 16) | ((header[6] & 0xFF) << 8) | (header[7] & 0xFF);
+            final var target = type == STDERR ? stderr : stdout;
+            while (remaining > 0) {
+                final var read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of multiplexed stream");
+                }
+                if (type != STDIN) {
+                    target.write(buffer, read);
+                }
+                remaining -= read;
+            }
+        }
+        stdout.flush();
+        stderr.flush();
+    }
+
+    private static class LineBuffer {
+        private final LineConsumer consumer;
+        private final boolean isStdErr;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        LineBuffer(LineConsumer consumer, boolean isStdErr) {
+            this.consumer = consumer;
+            this.isStdErr = isStdErr;
+        }
+
+        void write(byte[] bytes, int length) {
+            var start = 0;
+            for (var i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    this.pending.write(bytes, start, i - start);
+                    this.emit();
+                    start = i + 1;
+                }
+            }
+            this.pending.write(bytes, start, length - start);
+            if (this.pending.size() > MAX_LINE_LENGTH) {
+                this.emit();
+            }
+        }
+
+        void flush() {
+            if (this.pending.size() > 0) {
+                this.emit();
+            }
+        }
+
+        private void emit() {
+            var line = this.pending.toString(StandardCharsets.UTF_8);
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            this.pending.reset();
+            this.consumer.accept(line, this.isStdErr);
+        }
+    }
+}
@@ -1,27 +1,39 @@
 package fr.rtz.kestra.docker.compose;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.annotations.Plugin;
 import io.kestra.core.models.conditions.ConditionContext;
 import io.kestra.core.models.executions.Execution;
+import io.kestra.core.models.executions.metrics.Timer;
 import io.kestra.core.models.property.Property;
-import io.kestra.core.models.tasks.runners.AbstractLogConsumer;
 import io.kestra.core.models.triggers.*;
 import io.kestra.core.runners.RunContext;
+import io.kestra.core.storages.kv.KVMetadata;
+import io.kestra.core.storages.kv.KVValue;
+import io.kestra.core.storages.kv.KVValueAndMetadata;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.utils.TruthUtils;
 import io.kestra.plugin.core.runner.Process;
 import io.kestra.plugin.scripts.exec.scripts.runners.CommandsWrapper;
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
 import lombok.*;
 import lombok.experimental.SuperBuilder;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @SuperBuilder
 @ToString
@@ -57,6 +69,69 @@ import java.util.*;
                     projectName: my-compose-project
                     outputCondition: "{{ containers | jq('.[] | select((.State != \\"running\\") and .State != \\"healthy\\")') | length > 0 }}"
                 """
+        ),
+        @Example(
+            title = "Poll every 10 seconds while the project is changing, up to every 30 minutes once it is stable",
+            full = true,
+            code = """
+                id: watch-docker
+                namespace: company.team
+
+                tasks:
+                  - id: log
+                    type: io.kestra.plugin.core.log.Log
+                    message: "{{ trigger.containers }}"
+                triggers:
+                  - id: poll-docker
+                    type: fr.rtz.kestra.docker.compose.Ps
+                    projectName: my-compose-project
+                    adaptiveInterval: true
+                    minInterval: PT10S
+                    maxInterval: PT30M
+                    outputCondition: "{{ containers | length > 0 }}"
+                """
+        ),
+        @Example(
+            title = "Trigger a flow when containers of the api services exited with an error",
+            full = true,
+            code = """
+                id: watch-api
+                namespace: company.team
+
+                tasks:
+                  - id: log
+                    type: io.kestra.plugin.core.log.Log
+                    message: "{{ trigger.matched | length }} api containers exited with an error"
+                triggers:
+                  - id: poll-docker
+                    type: fr.rtz.kestra.docker.compose.Ps
+                    projectName: my-compose-project
+                    filter:
+                      service: "api-.*"
+                      states:
+                        - exited
+                      exitCodes:
+                        - 1-255
+                """
+        ),
+        @Example(
+            title = "Alert on containers restarting in a loop or killed for running out of memory",
+            full = true,
+            code = """
+                id: watch-restarts
+                namespace: company.team
+
+                tasks:
+                  - id: log
+                    type: io.kestra.plugin.core.log.Log
+                    message: "{{ trigger.containers | jq('[.[] | select(.RestartCount > 3 or .OOMKilled) | .Name]') | first }}"
+                triggers:
+                  - id: poll-docker
+                    type: fr.rtz.kestra.docker.compose.Ps
+                    projectName: my-compose-project
+                    enrich: true
+                    outputCondition: "{{ containers | jq('[.[] | select(.RestartCount > 3 or .OOMKilled)] | length') | first > 0 }}"
+                """
         )
     }
 )
@@ -65,11 +140,38 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
     @Builder.Default
     private final Duration interval = Duration.ofSeconds(60);
 
-    private final static String DOCKER_HOST = "DOCKER_HOST";
+    @Schema(
+        title = "Adapt the polling interval to the project activity",
+        description = """
+            The interval doubles after each poll returning the same containers states and health, up to `maxInterval`.
+            It is reset to `minInterval` as soon as a container state or health changes.
+            The polling state is kept in the KV store of the flow namespace, so that it is shared by the scheduler and \
+            the workers, and expires after twice `maxInterval`. The regular `interval` is used while no state is known.
+            """
+    )
+    @Builder.Default
+    private final Boolean adaptiveInterval = false;
+
+    @Schema(
+        title = "Minimum polling interval in adaptive mode",
+        description = "Defaults to `interval`"
+    )
+    private Duration minInterval;
+
+    @Schema(
+        title = "Maximum polling interval in adaptive mode",
+        description = "Defaults to one hour"
+    )
+    private Duration maxInterval;
+
     private final static String COMPOSE_STATUS_STDOUT = "COMPOSE_STATUS_STDOUT";
+    private final static Duration DEFAULT_MAX_INTERVAL = Duration.ofHours(1);
+    private final static Duration DEFAULT_ENRICH_TTL = Duration.ofMinutes(5);
+    private final static String POLL_STATE_KEY_PREFIX = "docker-compose-ps_";
 
     @Schema(
-        title = "Docker Host"
+        title = "Docker Host",
+        description = "Defaults to the `DOCKER_HOST` variable of the worker, else to the current docker context, or the local socket for `enrich`."
     )
     protected Property<String> dockerHost;
 
@@ -80,29 +182,68 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
     )
     protected Property<String> projectName;
 
+    @Schema(
+        title = "Docker Compose binary",
+        description = "Name or path of the docker-compose executable, defaults to `docker-compose`"
+    )
+    protected Property<String> composeBinary;
+
     @Schema(
         title = "Condition on the list of containers to trigger a flow which can be any expression that evaluates to a boolean value.",
         description = """
             The condition will be evaluated after running `docker-compose ps -a`, it can use the list of containers itself to determine whether to start a flow or not.
-            The `containers` variable is provided when evaluating the condition.
+            The `containers` variable is provided when evaluating the condition, along with the `matched` containers when a `filter` is set.
             Boolean coercion allows 0, -0, null and '' to evaluate to false, all other values will evaluate to true.
             The condition will be evaluated before any 'generic trigger conditions' that can be configured via the `conditions` property.
+            When a `filter` is also set, the condition is only evaluated if the filter is satisfied.
             """
     )
     private Property<String> outputCondition;
 
+    @Schema(
+        title = "Typed filter on the list of containers to trigger a flow.",
+        description = """
+            Cheaper alternative to `outputCondition` for common cases, evaluated directly on the containers list.
+            All the criteria set must match for a container to be selected, and the flow is triggered when at least `minCount` containers are selected.
+            The selected containers are exposed in the `matched` output.
+            """
+    )
+    @Valid
+    private ContainerFilter filter;
+
+    @Schema(
+        title = "Enrich the containers with their runtime details",
+        description = """
+            Collects the image id and repository digests, published ports, start date and uptime, restart count and OOM killed \
+            flag of every container through the Docker Engine API of `dockerHost`, so they can be used in conditions and by the \
+            triggered flow. The requests share a single kept alive connection.
+            Running containers are inspected on every poll, as a restart keeps their id and state. The details of stopped \
+            containers are cached until their state or exit code changes, and image digests by image id, until `enrichTtl` expires.
+            """
+    )
+    @Builder.Default
+    private final Boolean enrich = false;
+
+    @Schema(
+        title = "Maximum age of cached container details",
+        description = "Defaults to 5 minutes"
+    )
+    private Duration enrichTtl;
+
     @Override
     public Optional<Execution> evaluate(ConditionContext conditionContext, TriggerContext context) throws Exception {
         RunContext runContext = conditionContext.getRunContext();
-        final var dockerHost = runContext.render(this.dockerHost).as(String.class).orElse("");
+        final var dockerHost = DockerEngineClient.configuredHost(runContext.render(this.dockerHost).as(String.class).orElse(null));
         final var projectName = runContext.render(this.projectName).as(String.class).orElseThrow();
+        final var composeBinary = runContext.render(this.composeBinary).as(String.class).orElse(AbstractDockerCompose.DEFAULT_COMPOSE_BINARY);
 
         final var env = new HashMap<String, String>() {{
-            put(DOCKER_HOST, dockerHost);
+            // The current docker context is used when no host is set
+            dockerHost.ifPresent(host -> put(DockerEngineClient.DOCKER_HOST, host));
             put(COMPOSE_STATUS_STDOUT, "1");
         }};
         val cmdParts = new ArrayList<String>() {{
-            add("docker-compose");
+            add(composeBinary);
             add("--project-name");
             add(projectName);
             add("ps");
@@ -120,6 +261,7 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
             .run();
         if (response.getExitCode() != 0) {
             runContext.logger().error("An error occurred while running the command");
+            this.adaptInterval(runContext, context, null);
             return Optional.empty();
         }
         runContext.logger().info("Output : {}", logsConsumer.getLines());
@@ -131,15 +273,18 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
                 runContext.logger().error("An error occurred while parsing JSON output from docker-compose : {}", e.getMessage());
             }
         }
-        Map<String, Object> responseVariables = Map.of("containers", containerInfoList);
-        String renderedCondition = runContext.render(this.outputCondition).as(String.class, responseVariables).orElse(null);
-        if (TruthUtils.isTruthy(renderedCondition)) {
+        this.adaptInterval(runContext, context, containerInfoList);
+        final var containers = Boolean.TRUE.equals(this.enrich) ?
+            ContainerDetails.enrich(runContext, dockerHost.orElse(null), containerInfoList, this.enrichTtl == null ? DEFAULT_ENRICH_TTL : this.enrichTtl) :
+            containerInfoList;
+        final var matched = this.filter == null ? null : this.filter.filter(containers);
+        if (this.isTriggered(runContext, containers, matched)) {
             runContext.logger().info("Condition evaluated to true, triggering flow.");
             Execution execution = TriggerService.generateExecution(
                 this,
                 conditionContext,
                 context,
-                Output.builder().containers(containerInfoList).build()
+                Output.builder().containers(containers).matched(matched).build()
             );
             return Optional.of(execution);
         }
@@ -147,24 +292,135 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
         return Optional.empty();
     }
 
-    @Getter
-    private static class DockerComposeLogConsumer extends AbstractLogConsumer {
+    private boolean isTriggered(RunContext runContext, List<Output.ContainerInfo> containers, List<Output.ContainerInfo> matched) throws IllegalVariableEvaluationException {
+        if (this.filter != null) {
+            if (!this.filter.isSatisfiedBy(matched)) {
+                return false;
+            }
+            if (this.outputCondition == null) {
+                return true;
+            }
+        }
+        final Map<String, Object> responseVariables = new HashMap<>();
+        responseVariables.put("containers", containers);
+        if (matched != null) {
+            responseVariables.put("matched", matched);
+        }
+        String renderedCondition = runContext.render(this.outputCondition).as(String.class, responseVariables).orElse(null);
+        return TruthUtils.isTruthy(renderedCondition);
+    }
 
-        private final Collection<String> lines = new ArrayList<>();
+    @Override
+    public ZonedDateTime nextEvaluationDate(ConditionContext conditionContext, Optional<? extends TriggerContext> last) {
+        final var interval = last
+            .map(context -> this.currentInterval(conditionContext.getRunContext(), context))
+            .orElse(this.interval);
+        return ZonedDateTime.now().plus(interval);
+    }
 
-        @Override
-        public void accept(String line, Boolean isStdErr, Instant instant) {
-            this.accept(line, isStdErr);
+    private Duration currentInterval(RunContext runContext, TriggerContext context) {
+        if (!Boolean.TRUE.equals(this.adaptiveInterval)) {
+            return this.interval;
         }
+        return this.readPollState(runContext, context)
+            .map(state -> clamp(state.interval(), this.effectiveMinInterval(), this.effectiveMaxInterval()))
+            .orElse(this.interval);
+    }
 
-        @Override
-        public void accept(String line, Boolean isStdErr) {
-            if (isStdErr) {
-                stdErrCount.getAndIncrement();
-            } else {
-                stdOutCount.getAndIncrement();
-            }
-            this.lines.add(line);
+    private Duration effectiveMinInterval() {
+        return this.minInterval == null ? this.interval : this.minInterval;
+    }
+
+    private Duration effectiveMaxInterval() {
+        return this.maxInterval == null ? DEFAULT_MAX_INTERVAL : this.maxInterval;
+    }
+
+    /**
+     * Validates the adaptive bounds when the flow is saved, a minimum above the maximum would never be polled.
+     */
+    @JsonIgnore
+    @AssertTrue(message = "`minInterval`, or `interval` when not set, can't be greater than `maxInterval`, which defaults to one hour")
+    public boolean isIntervalRangeValid() {
+        return !Boolean.TRUE.equals(this.adaptiveInterval) || this.effectiveMinInterval().compareTo(this.effectiveMaxInterval()) <= 0;
+    }
+
+    /**
+     * Backs off the polling interval while the containers snapshot is unchanged and resets it on any transition.
+     * A failed poll (null containers) is considered as a transition.
+     */
+    private void adaptInterval(RunContext runContext, TriggerContext context, List<Output.ContainerInfo> containers) {
+        if (!Boolean.TRUE.equals(this.adaptiveInterval)) {
+            return;
+        }
+        final var snapshot = containers == null ? null : digest(containers.stream()
+            .map(c -> c.getId() + ":" + c.getState() + ":" + c.getHealth() + ":" + c.getExitCode())
+            .sorted()
+            .collect(Collectors.joining(",")));
+        final var previous = this.readPollState(runContext, context).orElse(null);
+        final var state = nextPollState(previous, snapshot, this.effectiveMinInterval(), this.effectiveMaxInterval());
+        try {
+            // Expiring entries clean up the state of deleted flows and triggers
+            runContext.namespaceKv(context.getNamespace()).put(
+                pollStateKey(context),
+                new KVValueAndMetadata(new KVMetadata(null, this.effectiveMaxInterval().multipliedBy(2)), state.toMap())
+            );
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to store the polling state of the trigger: {}", e.getMessage());
+        }
+        runContext.logger().debug("Next poll in {}", state.interval());
+        runContext.metric(Timer.of("interval", state.interval()));
+    }
+
+    private Optional<PollState> readPollState(RunContext runContext, TriggerContext context) {
+        try {
+            return runContext.namespaceKv(context.getNamespace()).getValue(pollStateKey(context))
+                .map(KVValue::value)
+                .filter(Map.class::isInstance)
+                .map(value -> PollState.of((Map<?, ?>) value));
+        } catch (Exception e) {
+            runContext.logger().warn("Unable to read the polling state of the trigger: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    static PollState nextPollState(PollState previous, String snapshot, Duration min, Duration max) {
+        if (previous == null || snapshot == null || !snapshot.equals(previous.snapshot())) {
+            return new PollState(snapshot, min);
+        }
+        // Clamped as the bounds may have changed with a new flow revision
+        return new PollState(snapshot, clamp(previous.interval().multipliedBy(2), min, max));
+    }
+
+    private static Duration clamp(Duration interval, Duration min, Duration max) {
+        if (interval.compareTo(max) > 0) {
+            return max;
+        }
+        return interval.compareTo(min) < 0 ? min : interval;
+    }
+
+    private static String digest(String snapshot) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(snapshot.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String pollStateKey(TriggerContext context) {
+        return POLL_STATE_KEY_PREFIX + context.getFlowId() + "_" + context.getTriggerId();
+    }
+
+    record PollState(String snapshot, Duration interval) {
+        Map<String, Object> toMap() {
+            final var map = new HashMap<String, Object>();
+            map.put("snapshot", this.snapshot);
+            map.put("interval", this.interval.toString());
+            return map;
+        }
+
+        static PollState of(Map<?, ?> map) {
+            final var snapshot = map.get("snapshot");
+            return new PollState(snapshot == null ? null : snapshot.toString(), Duration.parse(map.get("interval").toString()));
         }
     }
 
@@ -173,8 +429,14 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
     public static class Output implements io.kestra.core.models.tasks.Output {
         private List<Output.ContainerInfo> containers;
 
+        @Schema(
+            title = "Containers selected by the filter.",
+            description = "Only set when a `filter` is set."
+        )
+        private List<Output.ContainerInfo> matched;
+
         @Getter
-        @Builder
+        @Builder(toBuilder = true)
         @JsonIgnoreProperties(ignoreUnknown = true)
         public static class ContainerInfo {
             @JsonProperty("ID")
@@ -205,6 +467,56 @@ public class Ps extends AbstractTrigger implements PollingTriggerInterface, Trig
             private final String health;
             @JsonProperty("ExitCode")
             private final Integer exitCode;
+
+            @JsonProperty("ImageId")
+            @Schema(
+                title = "Local image id.",
+                description = "Only set when `enrich` is enabled."
+            )
+            private final String imageId;
+
+            @JsonProperty("RepoDigests")
+            @Schema(
+                title = "Repository digests of the image.",
+                description = "As `repository@sha256:digest`, empty for images that were never pulled nor pushed. Only set when `enrich` is enabled."
+            )
+            private final List<String> repoDigests;
+
+            // Not `Ports`, which docker-compose already outputs as a single string
+            @JsonProperty("PublishedPorts")
+            @Schema(
+                title = "Published ports.",
+                description = "As `hostIp:hostPort->containerPort/protocol`, only set when `enrich` is enabled."
+            )
+            private final List<String> ports;
+
+            @JsonProperty("StartedAt")
+            @Schema(
+                title = "Last start date.",
+                description = "Only set when `enrich` is enabled."
+            )
+            private final Instant startedAt;
+
+            @JsonProperty("Uptime")
+            @Schema(
+                title = "Time since the last start of a running container.",
+                description = "Only set when `enrich` is enabled."
+            )
+            private final Duration uptime;
+
+            @JsonProperty("RestartCount")
+            @Schema(
+                title = "Number of restarts.",
+                description = "Only set when `enrich` is enabled."
+            )
+            private final Integer restartCount;
+
+            @JsonProperty("OOMKilled")
+            @Schema(
+                title = "Whether the container was killed for running out of memory.",
+                description = "Only set when `enrich` is enabled."
+            )
+            private final Boolean oomKilled;
         }
     }
 }
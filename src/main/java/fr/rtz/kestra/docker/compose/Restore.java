@@ -0,0 +1,214 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Restore volumes",
+    description = """
+        Restores volumes of a Docker Compose project from snapshots taken with the Snapshot task.
+        Missing volumes are created with the Docker Compose labels so that the project adopts them. Existing files are \
+        overwritten, but files missing from the snapshot are kept."""
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Restore volumes before starting a project",
+            full = true,
+            code = """
+                id: restore-n-up
+                namespace: company.team
+                inputs:
+                  - id: snapshots
+                    type: JSON
+                tasks:
+                  - id: restore
+                    type: fr.rtz.kestra.docker.compose.Restore
+                    projectName: my-compose-project
+                    snapshots: "{{ inputs.snapshots }}"
+                  - id: up
+                    type: fr.rtz.kestra.docker.compose.Up
+                    projectName: my-compose-project
+                    detached: true
+                    yaml: read('docker-compose.yaml')
+                """
+        )
+    }
+)
+public class Restore extends AbstractVolumeTask implements RunnableTask<Restore.Output> {
+
+    @Schema(
+        title = "Snapshots to restore",
+        description = "Internal storage URI of each volume archive keyed by volume name, as in the `snapshots` output of the Snapshot task",
+        requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    @NotNull
+    protected Property<Map<String, String>> snapshots;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        final var start = Instant.now();
+        try (var client = this.engineClient(runContext)) {
+            final var projectName = this.renderProjectName(runContext);
+            final var projectVolumes = this.projectVolumes(client, projectName);
+            final var snapshots = runContext.render(this.snapshots).asMap(String.class, String.class);
+
+            this.pullImage(runContext, client);
+            final var jobs = new ArrayList<Callable<VolumeRestore>>();
+            for (var snapshot : snapshots.entrySet()) {
+                final var name = snapshot.getKey();
+                jobs.add(() -> this.restore(runContext, client, projectName, name, projectVolumes.get(name), URI.create(snapshot.getValue())));
+            }
+            final var restored = this.runConcurrently(runContext, jobs);
+
+            return Output.builder()
+                .volumes(restored)
+                .size(restored.stream().mapToLong(VolumeRestore::getSize).sum())
+                .duration(Duration.between(start, Instant.now()))
+                .build();
+        }
+    }
+
+    private VolumeRestore restore(RunContext ctx, DockerEngineClient client, String projectName, String name, String existing, URI uri) throws Exception {
+        final var start = Instant.now();
+        final var volume = existing != null ? existing : this.createVolume(ctx, client, projectName, name);
+        final var containerId = this.createHelper(ctx, client, volume, false);
+        final long size;
+        try (var archive = new CountingInputStream(new GZIPInputStream(ctx.storage().getFile(uri), DockerEngineClient.BUFFER_SIZE))) {
+            // Snapshot archives hold a single top level directory named after the mount path
+            final var path = "/containers/" + containerId + "/archive?" + DockerEngineClient.query("path", "/");
+            try (var response = client.upload("PUT", path, "application/x-tar", archive)) {
+                response.ensureSuccess();
+            }
+            size = archive.count;
+        } finally {
+            this.removeHelper(ctx, client, containerId);
+        }
+
+        final var duration = Duration.between(start, Instant.now());
+        ctx.logger().info("Volume {} restored from {}: {} bytes in {}", name, uri, size, duration);
+        ctx.metric(Counter.of("bytes", size, "volume", name));
+        ctx.metric(Timer.of("duration", duration, "volume", name));
+        return VolumeRestore.builder()
+            .name(name)
+            .volume(volume)
+            .size(size)
+            .duration(duration)
+            .throughput(Snapshot.throughput(size, duration))
+            .build();
+    }
+
+    private String createVolume(RunContext ctx, DockerEngineClient client, String projectName, String name) throws IOException {
+        final var volume = projectName + "_" + name;
+        ctx.logger().info("Creating volume {}", volume);
+        client.json("POST", "/volumes/create", Map.of(
+            "Name", volume,
+            "Labels", Map.of(PROJECT_LABEL, projectName, VOLUME_LABEL, name)
+        ));
+        return volume;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = super.read();
+            if (b >= 0) {
+                this.count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final var read = super.read(b, off, len);
+            if (read > 0) {
+                this.count += read;
+            }
+            return read;
+        }
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Restore of each volume."
+        )
+        private final List<VolumeRestore> volumes;
+
+        @Schema(
+            title = "Total uncompressed size in bytes."
+        )
+        private final Long size;
+
+        @Schema(
+            title = "Total duration."
+        )
+        private final Duration duration;
+    }
+
+    @Builder
+    @Getter
+    public static class VolumeRestore {
+        @Schema(
+            title = "Volume name in the compose file."
+        )
+        private final String name;
+
+        @Schema(
+            title = "Docker volume name."
+        )
+        private final String volume;
+
+        @Schema(
+            title = "Uncompressed size in bytes."
+        )
+        private final long size;
+
+        @Schema(
+            title = "Restore duration."
+        )
+        private final Duration duration;
+
+        @Schema(
+            title = "Throughput in uncompressed bytes per second."
+        )
+        private final Long throughput;
+    }
+}
@@ -0,0 +1,354 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.InputFilesInterface;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.FilesService;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Scale a service",
+    description = """
+        Changes the number of replicas of a service, optionally replacing the existing replicas in batches.
+        A rolling update creates up to `maxSurge` replicas above the target and removes up to `maxUnavailable` replicas \
+        below the target at a time, waiting for new replicas to be running|healthy between batches.
+        Old replicas are stopped and removed through the Docker Engine API of `dockerHost`."""
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Scale a service to 5 replicas",
+            full = true,
+            code = """
+                id: scale-service
+                namespace: company.team
+                tasks:
+                  - id: scale
+                    type: fr.rtz.kestra.docker.compose.Scale
+                    projectName: my-compose-project
+                    service: web
+                    replicas: 5
+                    yaml: "{{ read('docker-compose.yaml') }}"
+                """
+        ),
+        @Example(
+            title = "Roll a new image out to a service, two replicas at a time without capacity loss",
+            full = true,
+            code = """
+                id: rolling-update
+                namespace: company.team
+                tasks:
+                  - id: roll
+                    type: fr.rtz.kestra.docker.compose.Scale
+                    projectName: my-compose-project
+                    service: web
+                    replicas: 6
+                    rolling: true
+                    maxSurge: 2
+                    maxUnavailable: 0
+                    env:
+                      WEB_IMG: nginx:1.27
+                    yaml: |
+                      services:
+                        web:
+                          image: ${WEB_IMG}
+                """
+        )
+    }
+)
+public class Scale extends AbstractDockerCompose implements RunnableTask<Scale.Output>, InputFilesInterface {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // Looked up by docker-compose, in its order of preference
+    private static final List<String> COMPOSE_FILES = List.of("compose.yaml", "compose.yml", "docker-compose.yaml", "docker-compose.yml");
+
+    @Schema(
+        title = "Docker Compose stack definition (YAML).",
+        description = """
+            Required unless a compose file is provided through `inputFiles`, or already written to the working directory \
+            by an `Up` step of the same `Session`."""
+    )
+    protected Property<String> yaml;
+
+    @Schema(
+        title = "Service to scale",
+        requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    @NotNull
+    protected Property<String> service;
+
+    @Schema(
+        title = "Target number of replicas",
+        description = "Defaults to the current number of replicas"
+    )
+    protected Property<Integer> replicas;
+
+    @Schema(
+        title = "Replace existing replicas",
+        description = "Recreate every existing replica in batches, e.g. to roll out a new image or configuration"
+    )
+    protected Property<Boolean> rolling;
+
+    @Schema(
+        title = "Maximum number of replicas above the target during a rolling update"
+    )
+    @Builder.Default
+    protected Property<Integer> maxSurge = Property.of(1);
+
+    @Schema(
+        title = "Maximum number of replicas below the target during a rolling update"
+    )
+    @Builder.Default
+    protected Property<Integer> maxUnavailable = Property.of(0);
+
+    @Schema(
+        title = "Wait timeout",
+        description = "Maximum duration in seconds to wait for new replicas to be running|healthy"
+    )
+    protected Property<Integer> waitTimeout;
+
+    @Schema(
+        title = "Additional environment variables to inject in the process"
+    )
+    private Property<Map<String, String>> env;
+
+    private Object inputFiles;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        final var start = Instant.now();
+        final var yaml = runContext.render(this.yaml).as(String.class).orElse(null);
+        if (yaml != null) {
+            runContext.workingDir().createFile("docker-compose.yaml", yaml.getBytes(StandardCharsets.UTF_8));
+        }
+        // Written once for every compose call, and before looking for the compose file they may provide
+        FilesService.inputFiles(runContext, this.inputFiles);
+        if (COMPOSE_FILES.stream().noneMatch(file -> Files.exists(runContext.workingDir().path().resolve(file)))) {
+            throw new IllegalArgumentException("No compose file in the working directory, set `yaml` or provide one of " + COMPOSE_FILES + " through `inputFiles`");
+        }
+
+        final Map<String, String> env = runContext.render(
+            this.getEnv()).asMap(String.class, String.class).isEmpty() ?
+            new HashMap<>() :
+            runContext.render(this.getEnv()).asMap(String.class, String.class);
+        this.appendDockerComposeEnv(runContext, env);
+
+        final var service = runContext.render(this.service).as(String.class).orElseThrow();
+        final var old = this.listReplicas(runContext, env, service);
+        final var target = runContext.render(this.replicas).as(Integer.class).orElse(old.size());
+        final var batches = new ArrayList<Batch>();
+
+        if (!runContext.render(this.rolling).as(Boolean.class).orElse(false) || old.isEmpty()) {
+            this.scale(runContext, env, service, target);
+        } else {
+            final var plan = plan(
+                old.size(),
+                target,
+                runContext.render(this.maxSurge).as(Integer.class).orElse(1),
+                runContext.render(this.maxUnavailable).as(Integer.class).orElse(0)
+            );
+            try (var client = this.engineClient(runContext)) {
+                for (BatchPlan step : plan.batches()) {
+                    final var batchStart = Instant.now();
+                    final var removed = new ArrayList<>(take(old, step.removeBefore()));
+                    remove(client, removed);
+                    if (step.scaleTo() != null) {
+                        this.scale(runContext, env, service, step.scaleTo());
+                    }
+                    final var excess = take(old, step.removeAfter());
+                    remove(client, excess);
+                    removed.addAll(excess);
+
+                    final var batch = Batch.builder()
+                        .index(batches.size())
+                        .created(step.created())
+                        .removed(removed)
+                        .duration(Duration.between(batchStart, Instant.now()))
+                        .build();
+                    runContext.logger().info("Batch {}: created {} replicas, removed {} in {}", batch.getIndex(), step.created(), removed, batch.getDuration());
+                    runContext.metric(Timer.of("batch.duration", batch.getDuration(), "service", service));
+                    batches.add(batch);
+                }
+            }
+            if (plan.finalReplicas() != null) {
+                this.scale(runContext, env, service, plan.finalReplicas());
+            }
+        }
+
+        return Output.builder()
+            .service(service)
+            .replicas(target)
+            .batches(batches)
+            .duration(Duration.between(start, Instant.now()))
+            .build();
+    }
+
+    /**
+     * Plans the batches replacing {@code old} replicas by {@code target} new ones. Each batch first retires up to
+     * {@code maxUnavailable} old replicas, then surges new replicas keeping the total under target + maxSurge, and
+     * finally retires the old replicas exceeding the target.
+     */
+    static RollingPlan plan(int old, int target, int maxSurge, int maxUnavailable) {
+        if (maxSurge < 0 || maxUnavailable < 0 || maxSurge + maxUnavailable == 0) {
+            throw new IllegalArgumentException("maxSurge and maxUnavailable can't be negative nor both 0");
+        }
+        if (target < 0) {
+            throw new IllegalArgumentException("replicas can't be negative");
+        }
+        final var batches = new ArrayList<BatchPlan>();
+        var fresh = 0;
+        while (old > 0) {
+            final var removeBefore = Math.min(maxUnavailable, old);
+            old -= removeBefore;
+            final var freshTarget = Math.max(fresh, Math.min(target, target + maxSurge - old));
+            final var created = freshTarget - fresh;
+            fresh = freshTarget;
+            final var removeAfter = Math.max(0, Math.min(old, old + fresh - target));
+            old -= removeAfter;
+            if (removeBefore + created + removeAfter == 0) {
+                throw new IllegalStateException("Rolling update can't progress with " + old + " old replicas left");
+            }
+            batches.add(new BatchPlan(removeBefore, created > 0 ? old + removeAfter + fresh : null, created, removeAfter));
+        }
+        return new RollingPlan(batches, fresh != target ? target : null);
+    }
+
+    /**
+     * @param removeBefore number of old replicas to remove before scaling
+     * @param scaleTo      total number of replicas to scale to, null if no replica is created
+     * @param created      number of new replicas created by scaling
+     * @param removeAfter  number of old replicas to remove after scaling
+     */
+    record BatchPlan(int removeBefore, Integer scaleTo, int created, int removeAfter) {
+    }
+
+    /**
+     * @param finalReplicas number of replicas to scale to once every batch is done, null if already reached
+     */
+    record RollingPlan(List<BatchPlan> batches, Integer finalReplicas) {
+    }
+
+    private static List<String> take(List<String> ids, int count) {
+        final var taken = new ArrayList<>(ids.subList(0, count));
+        ids.subList(0, count).clear();
+        return taken;
+    }
+
+    private List<String> listReplicas(RunContext ctx, Map<String, String> env, String service) throws Exception {
+        final var cmds = this.initCmd(ctx);
+        cmds.addAll(List.of("ps", "-a", "--format=json", service));
+        final var logsConsumer = new DockerComposeLogConsumer();
+        this.execute(ctx, env, null, cmds, logsConsumer);
+        final var ids = new ArrayList<String>();
+        for (String line : logsConsumer.getLines()) {
+            try {
+                ids.add(MAPPER.readValue(line, Ps.Output.ContainerInfo.class).getId());
+            } catch (JsonProcessingException e) {
+                ctx.logger().debug("Ignoring docker-compose output: {}", line);
+            }
+        }
+        return ids;
+    }
+
+    private void scale(RunContext ctx, Map<String, String> env, String service, int replicas) throws Exception {
+        final var cmds = this.initCmd(ctx);
+        cmds.addAll(List.of("up", "--detach", "--no-deps", "--no-recreate", "--wait", "--scale", service + "=" + replicas));
+        if (ctx.render(this.waitTimeout).as(Integer.class).orElse(0) > 0) {
+            cmds.add("--wait-timeout");
+            cmds.add(String.valueOf(ctx.render(this.waitTimeout).as(Integer.class).orElseThrow()));
+        }
+        cmds.add(service);
+        this.execute(ctx, env, null, cmds, null);
+    }
+
+    /**
+     * Compose can't target a single replica, old replicas are stopped and removed through the Engine API instead.
+     */
+    private static void remove(DockerEngineClient client, List<String> ids) throws IOException {
+        for (String id : ids) {
+            try (var stop = client.request("POST", "/containers/" + id + "/stop", null)) {
+                // 304 when the container is already stopped
+                if (stop.status() != 304) {
+                    stop.ensureSuccess();
+                }
+            }
+            client.json("DELETE", "/containers/" + id, null);
+        }
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Scaled service."
+        )
+        private final String service;
+
+        @Schema(
+            title = "Number of replicas after scaling."
+        )
+        private final Integer replicas;
+
+        @Schema(
+            title = "Rolling update batches."
+        )
+        private final List<Batch> batches;
+
+        @Schema(
+            title = "Total duration."
+        )
+        private final Duration duration;
+    }
+
+    @Builder
+    @Getter
+    public static class Batch {
+        @Schema(
+            title = "Batch index."
+        )
+        private final Integer index;
+
+        @Schema(
+            title = "Number of replicas created."
+        )
+        private final Integer created;
+
+        @Schema(
+            title = "Ids of the replicas removed."
+        )
+        private final List<String> removed;
+
+        @Schema(
+            title = "Batch duration."
+        )
+        private final Duration duration;
+    }
+}
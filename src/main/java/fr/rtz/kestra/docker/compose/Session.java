@@ -0,0 +1,258 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.InputFilesInterface;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.models.tasks.Task;
+import io.kestra.core.runners.FilesService;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Run several compose operations in a single session",
+    description = """
+        Runs an ordered list of compose tasks as steps of a single task. The project name, Docker host and environment \
+        variables of the session are rendered once and used by every step that doesn't set its own.
+        Steps share the same working directory, where input files are written once, and the same Docker Engine API \
+        connections. The session stops at the first failing step.
+        Steps run within the session task rather than as tasks of the flow: `timeout`, `retry`, `allowFailure` and \
+        `runIf` can't be set on them, and their properties can't reference the outputs of earlier steps. Use separate \
+        tasks when a step depends on the output of another one."""
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Deploy a stack, run the database migrations in a single replica and snapshot the database",
+            full = true,
+            code = """
+                id: deploy
+                namespace: company.team
+                tasks:
+                  - id: session
+                    type: fr.rtz.kestra.docker.compose.Session
+                    projectName: my-compose-project
+                    env:
+                      API_IMG: my-api:1.2.0
+                    inputFiles:
+                      nginx.conf: "{{ read('nginx.conf') }}"
+                    steps:
+                      - id: up
+                        type: fr.rtz.kestra.docker.compose.Up
+                        detached: true
+                        incremental: true
+                        yaml: "{{ read('docker-compose.yaml') }}"
+                      - id: migrate
+                        type: fr.rtz.kestra.docker.compose.Exec
+                        service: api
+                        replicas:
+                          - 1
+                        commands:
+                          - ./manage.py
+                          - migrate
+                      - id: snapshot
+                        type: fr.rtz.kestra.docker.compose.Snapshot
+                        volumes:
+                          - db-data
+                """
+        ),
+        @Example(
+            title = "Tear down a stack on a remote host",
+            full = true,
+            code = """
+                id: teardown
+                namespace: company.team
+                tasks:
+                  - id: session
+                    type: fr.rtz.kestra.docker.compose.Session
+                    projectName: my-compose-project
+                    dockerHost: tcp://docker.company.team:2375
+                    steps:
+                      - id: stop
+                        type: fr.rtz.kestra.docker.compose.Stop
+                      - id: down
+                        type: fr.rtz.kestra.docker.compose.Down
+                        removeImages: all
+                """
+        )
+    }
+)
+public class Session extends AbstractDockerCompose implements RunnableTask<Session.Output>, InputFilesInterface {
+
+    @Schema(
+        title = "Compose tasks to run, in order",
+        description = """
+            Any task of this plugin except `Session` itself. Steps inherit the `projectName`, `dockerHost`, `composeBinary` \
+            and `env` of the session. Their outputs are available once the session is done, in its `outputs` output.""",
+        requiredMode = Schema.RequiredMode.REQUIRED
+    )
+    @NotEmpty
+    @Valid
+    @JsonDeserialize(contentUsing = StepDeserializer.class)
+    private List<AbstractDockerCompose> steps;
+
+    @Schema(
+        title = "Environment variables shared by the steps",
+        description = "Variables set by a step take precedence"
+    )
+    private Property<Map<String, String>> env;
+
+    private Object inputFiles;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        final var start = Instant.now();
+        for (AbstractDockerCompose step : this.steps) {
+            checkStep(step);
+        }
+
+        final Map<String, String> env = new HashMap<>(runContext.render(this.env).asMap(String.class, String.class));
+        FilesService.inputFiles(runContext, this.inputFiles);
+
+        final var results = new ArrayList<StepResult>();
+        final var outputs = new LinkedHashMap<String, Map<String, Object>>();
+        try (var session = ComposeContext.attach(
+            runContext,
+            runContext.render(this.projectName).as(String.class).orElse(null),
+            runContext.render(this.dockerHost).as(String.class).orElse(null),
+            runContext.render(this.composeBinary).as(String.class).orElse(null),
+            env
+        )) {
+            for (AbstractDockerCompose step : this.steps) {
+                if (step.isDisabled()) {
+                    runContext.logger().info("Skipping disabled step '{}'", step.getId());
+                    continue;
+                }
+                runContext.logger().info("Running step '{}' ({})", step.getId(), step.getType());
+                final var stepStart = Instant.now();
+                final io.kestra.core.models.tasks.Output output;
+                try {
+                    output = ((RunnableTask<?>) step).run(runContext);
+                } catch (Exception e) {
+                    runContext.logger().error("Step '{}' failed after {}", step.getId(), Duration.between(stepStart, Instant.now()));
+                    throw e;
+                }
+                final var duration = Duration.between(stepStart, Instant.now());
+                runContext.metric(Timer.of("step.duration", duration, "step", step.getId()));
+                results.add(StepResult.builder()
+                    .id(step.getId())
+                    .type(step.getType())
+                    .duration(duration)
+                    .build());
+                outputs.put(step.getId(), output == null ? Map.of() : output.toMap());
+            }
+        }
+
+        return Output.builder()
+            .steps(results)
+            .outputs(outputs)
+            .duration(Duration.between(start, Instant.now()))
+            .build();
+    }
+
+    /**
+     * Steps are run by the session itself, flow level task properties would be silently ignored.
+     */
+    static void checkStep(AbstractDockerCompose step) {
+        if (!(step instanceof RunnableTask<?>) || step instanceof Session) {
+            throw new IllegalArgumentException("Step '" + step.getId() + "' of type " + step.getType() + " can't run in a compose session");
+        }
+        final var unsupported = new ArrayList<String>();
+        if (step.getTimeout() != null) {
+            unsupported.add("timeout");
+        }
+        if (step.getRetry() != null) {
+            unsupported.add("retry");
+        }
+        if (step.isAllowFailure()) {
+            unsupported.add("allowFailure");
+        }
+        if (step.getRunIf() != null && !"true".equals(step.getRunIf().trim())) {
+            unsupported.add("runIf");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException("Step '" + step.getId() + "' sets " + unsupported + ", which are not supported in a compose session");
+        }
+    }
+
+    /**
+     * Deserializes steps as any task, then checks they are compose tasks, as only {@link Task} is registered as polymorphic.
+     */
+    static class StepDeserializer extends JsonDeserializer<AbstractDockerCompose> {
+        @Override
+        public AbstractDockerCompose deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            final var task = context.readValue(parser, Task.class);
+            if (!(task instanceof AbstractDockerCompose step)) {
+                throw JsonMappingException.from(parser, "Step '" + task.getId() + "' of type " + task.getType() + " can't run in a compose session");
+            }
+            return step;
+        }
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Steps run, in order, with their duration."
+        )
+        private final List<StepResult> steps;
+
+        @Schema(
+            title = "Outputs of the steps, keyed by step id."
+        )
+        private final Map<String, Map<String, Object>> outputs;
+
+        @Schema(
+            title = "Total duration."
+        )
+        private final Duration duration;
+    }
+
+    @Builder
+    @Getter
+    public static class StepResult {
+        @Schema(
+            title = "Step id."
+        )
+        private final String id;
+
+        @Schema(
+            title = "Step type."
+        )
+        private final String type;
+
+        @Schema(
+            title = "Step duration."
+        )
+        private final Duration duration;
+    }
+}
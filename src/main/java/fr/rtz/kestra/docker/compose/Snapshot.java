@@ -0,0 +1,339 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.models.annotations.Example;
+import io.kestra.core.models.annotations.Plugin;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.executions.metrics.Timer;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.models.tasks.RunnableTask;
+import io.kestra.core.runners.RunContext;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.experimental.SuperBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
+
+@SuperBuilder
+@ToString
+@EqualsAndHashCode
+@Getter
+@NoArgsConstructor
+@Schema(
+    title = "Snapshot volumes",
+    description = """
+        Archives the named volumes of a Docker Compose project into the internal storage, as gzipped tarballs.
+        Volume contents are streamed from the Docker Engine to the internal storage without intermediate files, \
+        through helper containers that are created but never started."""
+)
+@Plugin(
+    examples = {
+        @Example(
+            title = "Snapshot volumes before tearing a project down",
+            full = true,
+            code = """
+                id: backup-n-down
+                namespace: company.team
+                tasks:
+                  - id: snapshot
+                    type: fr.rtz.kestra.docker.compose.Snapshot
+                    projectName: my-compose-project
+                  - id: down
+                    type: fr.rtz.kestra.docker.compose.Down
+                    projectName: my-compose-project
+                """
+        ),
+        @Example(
+            title = "Incremental snapshot, only archiving volumes changed since the previous one",
+            full = true,
+            code = """
+                id: incremental-backup
+                namespace: company.team
+                tasks:
+                  - id: snapshot
+                    type: fr.rtz.kestra.docker.compose.Snapshot
+                    projectName: my-compose-project
+                    incremental: true
+                    previousChecksums: "{{ kv('my-compose-project-checksums', errorOnMissing=false) ?? {} }}"
+                    previousSnapshots: "{{ kv('my-compose-project-snapshots', errorOnMissing=false) ?? {} }}"
+                  - id: save-checksums
+                    type: io.kestra.plugin.core.kv.Set
+                    key: my-compose-project-checksums
+                    value: "{{ outputs.snapshot.checksums }}"
+                  - id: save-snapshots
+                    type: io.kestra.plugin.core.kv.Set
+                    key: my-compose-project-snapshots
+                    value: "{{ outputs.snapshot.snapshots }}"
+                """
+        )
+    }
+)
+public class Snapshot extends AbstractVolumeTask implements RunnableTask<Snapshot.Output> {
+
+    @Schema(
+        title = "Volumes to snapshot",
+        description = "Volume names as declared in the compose file, defaults to every named volume of the project"
+    )
+    protected Property<List<String>> volumes;
+
+    @Schema(
+        title = "Skip unchanged volumes",
+        description = """
+            Compare the checksum of each volume archive to `previousChecksums` and skip the upload when it is unchanged.
+            The archive is read once to compute the checksum, and a second time only when it changed."""
+    )
+    protected Property<Boolean> incremental;
+
+    @Schema(
+        title = "Checksums of the previous snapshot",
+        description = "The `checksums` output of a previous snapshot, keyed by volume name"
+    )
+    protected Property<Map<String, String>> previousChecksums;
+
+    @Schema(
+        title = "Archives of the previous snapshot",
+        description = """
+            The `snapshots` output of a previous snapshot, keyed by volume name.
+            The archives of unchanged volumes are carried over to the `snapshots` output, so that it can always be restored as a whole."""
+    )
+    protected Property<Map<String, String>> previousSnapshots;
+
+    @Override
+    public Output run(RunContext runContext) throws Exception {
+        final var start = Instant.now();
+        try (var client = this.engineClient(runContext)) {
+            final var projectName = this.renderProjectName(runContext);
+
+            final var projectVolumes = this.projectVolumes(client, projectName);
+            final var selected = runContext.render(this.volumes).asList(String.class);
+            final var volumes = selected.isEmpty() ? projectVolumes.keySet().stream().toList() : selected;
+            for (String volume : volumes) {
+                if (!projectVolumes.containsKey(volume)) {
+                    throw new IllegalArgumentException("Volume '" + volume + "' not found in project '" + projectName + "'");
+                }
+            }
+            final var incremental = runContext.render(this.incremental).as(Boolean.class).orElse(false);
+            final Map<String, String> previous = incremental ?
+                runContext.render(this.previousChecksums).asMap(String.class, String.class) :
+                Map.of();
+            final Map<String, String> previousUris = incremental ?
+                runContext.render(this.previousSnapshots).asMap(String.class, String.class) :
+                Map.of();
+
+            this.pullImage(runContext, client);
+            final var jobs = new ArrayList<Callable<VolumeSnapshot>>();
+            for (String volume : volumes) {
+                final var previousUri = previousUris.get(volume);
+                jobs.add(() -> this.snapshot(
+                    runContext,
+                    client,
+                    volume,
+                    projectVolumes.get(volume),
+                    previous.get(volume),
+                    previousUri == null ? null : URI.create(previousUri)
+                ));
+            }
+            final var snapshots = this.runConcurrently(runContext, jobs);
+
+            final var checksums = new LinkedHashMap<String, String>();
+            final var uris = new LinkedHashMap<String, URI>();
+            snapshots.forEach(snapshot -> {
+                checksums.put(snapshot.getName(), snapshot.getChecksum());
+                if (snapshot.getUri() != null) {
+                    uris.put(snapshot.getName(), snapshot.getUri());
+                }
+            });
+            return Output.builder()
+                .volumes(snapshots)
+                .snapshots(uris)
+                .checksums(checksums)
+                .size(snapshots.stream().mapToLong(VolumeSnapshot::getSize).sum())
+                .duration(Duration.between(start, Instant.now()))
+                .build();
+        }
+    }
+
+    private VolumeSnapshot snapshot(RunContext ctx, DockerEngineClient client, String name, String volume, String previousChecksum, URI previousUri) throws Exception {
+        final var start = Instant.now();
+        final var containerId = this.createHelper(ctx, client, volume, true);
+        try {
+            final var archivePath = "/containers/" + containerId + "/archive?" + DockerEngineClient.query("path", MOUNT_PATH);
+            if (previousChecksum != null) {
+                final var digest = sha256();
+                final long size;
+                try (var archive = client.request("GET", archivePath, null)) {
+                    size = copy(archive.ensureSuccess().body(), OutputStream.nullOutputStream(), digest);
+                }
+                final var checksum = HexFormat.of().formatHex(digest.digest());
+                if (checksum.equals(previousChecksum)) {
+                    ctx.logger().info("Volume {} unchanged, skipping", name);
+                    return VolumeSnapshot.builder()
+                        .name(name)
+                        .volume(volume)
+                        .uri(previousUri)
+                        .checksum(checksum)
+                        .size(size)
+                        .skipped(true)
+                        .duration(Duration.between(start, Instant.now()))
+                        .build();
+                }
+            }
+
+            final var digest = sha256();
+            final URI uri;
+            final long size;
+            try (var archive = client.request("GET", archivePath, null)) {
+                final var tar = archive.ensureSuccess().body();
+                final var pipeIn = new PipedInputStream(DockerEngineClient.BUFFER_SIZE);
+                final var pipeOut = new PipedOutputStream(pipeIn);
+                // Compress on a separate thread while the internal storage consumes the other end of the pipe
+                final var compression = new FutureTask<Long>(() -> {
+                    try (var gzip = new GZIPOutputStream(pipeOut, DockerEngineClient.BUFFER_SIZE)) {
+                        return copy(tar, gzip, digest);
+                    }
+                });
+                Thread.ofVirtual().name("snapshot-" + name).start(compression);
+                try (pipeIn) {
+                    uri = ctx.storage().putFile(pipeIn, volume + ".tar.gz");
+                }
+                size = compression.get();
+            }
+
+            final var duration = Duration.between(start, Instant.now());
+            final var snapshot = VolumeSnapshot.builder()
+                .name(name)
+                .volume(volume)
+                .uri(uri)
+                .checksum(HexFormat.of().formatHex(digest.digest()))
+                .size(size)
+                .skipped(false)
+                .duration(duration)
+                .throughput(throughput(size, duration))
+                .build();
+            ctx.logger().info("Volume {} archived to {}: {} bytes in {} ({} bytes/s)", name, uri, size, duration, snapshot.getThroughput());
+            ctx.metric(Counter.of("bytes", size, "volume", name));
+            ctx.metric(Timer.of("duration", duration, "volume", name));
+            return snapshot;
+        } finally {
+            this.removeHelper(ctx, client, containerId);
+        }
+    }
+
+    static long copy(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+        final var buffer = new byte[DockerEngineClient.BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            if (digest != null) {
+                digest.update(buffer, 0, read);
+            }
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    static Long throughput(long size, Duration duration) {
+        return duration.isZero() ? null : size * 1000 / Math.max(1, duration.toMillis());
+    }
+
+    private static MessageDigest sha256() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+
+    @Builder
+    @Getter
+    public static class Output implements io.kestra.core.models.tasks.Output {
+        @Schema(
+            title = "Snapshot of each volume."
+        )
+        private final List<VolumeSnapshot> volumes;
+
+        @Schema(
+            title = "Internal storage URI of each archived volume.",
+            description = "Unchanged volumes of an incremental snapshot are included with their `previousSnapshots` archive, if given."
+        )
+        private final Map<String, URI> snapshots;
+
+        @Schema(
+            title = "Archive checksum of each volume.",
+            description = "To be provided as `previousChecksums` of the next incremental snapshot."
+        )
+        private final Map<String, String> checksums;
+
+        @Schema(
+            title = "Total uncompressed size in bytes."
+        )
+        private final Long size;
+
+        @Schema(
+            title = "Total duration."
+        )
+        private final Duration duration;
+    }
+
+    @Builder
+    @Getter
+    public static class VolumeSnapshot {
+        @Schema(
+            title = "Volume name in the compose file."
+        )
+        private final String name;
+
+        @Schema(
+            title = "Docker volume name."
+        )
+        private final String volume;
+
+        @Schema(
+            title = "Internal storage URI of the gzipped tarball.",
+            description = "The previous archive of a skipped volume, if given in `previousSnapshots`."
+        )
+        private final URI uri;
+
+        @Schema(
+            title = "SHA-256 checksum of the uncompressed archive."
+        )
+        private final String checksum;
+
+        @Schema(
+            title = "Uncompressed size in bytes."
+        )
+        private final long size;
+
+        @Schema(
+            title = "Whether the volume was skipped as unchanged."
+        )
+        private final Boolean skipped;
+
+        @Schema(
+            title = "Snapshot duration."
+        )
+        private final Duration duration;
+
+        @Schema(
+            title = "Throughput in uncompressed bytes per second."
+        )
+        private final Long throughput;
+    }
+}
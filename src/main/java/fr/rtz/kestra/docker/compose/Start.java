@@ -97,6 +97,12 @@ public class Start extends AbstractDockerCompose implements RunnableTask<ScriptO
     )
     private Property<Map<String, String>> env;
 
+    @Schema(
+        title = "Log forwarding options",
+        description = "Rate limiting, sampling and batching applied to container logs when not running in detached mode"
+    )
+    private LogOptions logs;
+
     private Object inputFiles;
 
     @Override
@@ -111,12 +117,16 @@ public class Start extends AbstractDockerCompose implements RunnableTask<ScriptO
 
         final var cmds = this.buildCommands(runContext);
         runContext.logger().info("Running: {}", cmds);
-        return new CommandsWrapper(runContext)
+        final var commands = new CommandsWrapper(runContext)
             .withEnv(env)
             .withInputFiles(this.inputFiles)
             .withCommands(cmds)
-            .withTaskRunner(taskRunner)
-            .run();
+            .withTaskRunner(taskRunner);
+        if (runContext.render(this.detached).as(Boolean.class).orElse(false)) {
+            return commands.run();
+        }
+        // Attached mode streams every container log line, throttle them before they reach the log queue
+        return runThrottled(commands, ThrottledLogConsumer.of(runContext, this.logs));
     }
 
     private Property<List<String>> buildCommands(RunContext ctx) throws IllegalVariableEvaluationException {
@@ -0,0 +1,303 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.exceptions.IllegalVariableEvaluationException;
+import io.kestra.core.models.executions.metrics.Counter;
+import io.kestra.core.models.tasks.runners.AbstractLogConsumer;
+import io.kestra.core.runners.RunContext;
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Log consumer forwarding attached docker-compose output to the Kestra logs through a bounded buffer.
+ * Lines are rate limited per service, grouped into batches and, when they can't be forwarded, spilled to a file
+ * uploaded to the internal storage once the process is over.
+ */
+class ThrottledLogConsumer extends AbstractLogConsumer implements AutoCloseable {
+
+    private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[;\\d]*m");
+    // docker-compose prefixes attached output with the container name, e.g. "web-1  | message"
+    private static final Pattern SERVICE_PREFIX = Pattern.compile("^(\\S+?)(?:-\\d+)?\\s+\\|\\s?(.*)$");
+    private static final String NO_SERVICE = "docker-compose";
+
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static final String SPILL_FILE = "docker-compose-dropped.log";
+
+    /**
+     * Receives the batches of lines, logged by default.
+     */
+    @FunctionalInterface
+    interface BatchSink {
+        void emit(String service, boolean isStdErr, String lines);
+    }
+
+    private final RunContext runContext;
+    private final Logger logger;
+    private final int maxLinesPerSecond;
+    private final int sampleRatio;
+    private final int batchSize;
+    private final Duration batchInterval;
+    private final boolean spill;
+    private final BatchSink sink;
+
+    private final BlockingQueue<Line> buffer;
+    private final Map<String, ServiceStats> services = new ConcurrentHashMap<>();
+    private final Thread forwarder;
+    private volatile boolean closed;
+
+    private Path spillFile;
+    private BufferedWriter spillWriter;
+    private boolean spillFailed;
+    private URI spilled;
+
+    static ThrottledLogConsumer of(RunContext runContext, LogOptions options) throws IllegalVariableEvaluationException {
+        final var opts = options == null ? LogOptions.builder().build() : options;
+        return new ThrottledLogConsumer(
+            runContext,
+            runContext.render(opts.getMaxLinesPerSecond()).as(Integer.class).orElse(500),
+            runContext.render(opts.getSampleRatio()).as(Integer.class).orElse(100),
+            runContext.render(opts.getBatchSize()).as(Integer.class).orElse(50),
+            runContext.render(opts.getBatchInterval()).as(Duration.class).orElse(Duration.ofSeconds(1)),
+            runContext.render(opts.getBufferSize()).as(Integer.class).orElse(10_000),
+            runContext.render(opts.getSpill()).as(Boolean.class).orElse(true)
+        );
+    }
+
+    ThrottledLogConsumer(RunContext runContext, int maxLinesPerSecond, int sampleRatio, int batchSize,
+                         Duration batchInterval, int bufferSize, boolean spill) {
+        this(runContext, maxLinesPerSecond, sampleRatio, batchSize, batchInterval, bufferSize, spill, null);
+    }
+
+    ThrottledLogConsumer(RunContext runContext, int maxLinesPerSecond, int sampleRatio, int batchSize,
+                         Duration batchInterval, int bufferSize, boolean spill, BatchSink sink) {
+        if (batchInterval == null || batchInterval.isNegative() || batchInterval.isZero()) {
+            throw new IllegalArgumentException("batchInterval must be positive, got " + batchInterval);
+        }
+        this.runContext = runContext;
+        this.logger = runContext.logger();
+        this.sink = sink != null ? sink : this::log;
+        this.maxLinesPerSecond = Math.max(1, maxLinesPerSecond);
+        this.sampleRatio = Math.max(1, sampleRatio);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchInterval = batchInterval;
+        this.spill = spill;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.forwarder = Thread.ofVirtual().name("docker-compose-logs").start(this::forward);
+    }
+
+    @Override
+    public void accept(String line, Boolean isStdErr, Instant instant) {
+        this.accept(line, isStdErr);
+    }
+
+    @Override
+    public void accept(String line, Boolean isStdErr) {
+        if (isStdErr) {
+            stdErrCount.getAndIncrement();
+        } else {
+            stdOutCount.getAndIncrement();
+        }
+        final var matcher = SERVICE_PREFIX.matcher(ANSI_ESCAPE.matcher(line).replaceAll(""));
+        final var service = matcher.matches() ? matcher.group(1) : NO_SERVICE;
+        final var stats = this.services.computeIfAbsent(service, s -> new ServiceStats());
+        if (stats.admit(System.nanoTime(), this.maxLinesPerSecond, this.sampleRatio) == Admission.DROPPED) {
+            this.spill(line);
+            return;
+        }
+        if (!this.buffer.offer(new Line(service, message(matcher, line), isStdErr))) {
+            stats.drop();
+            this.spill(line);
+        }
+    }
+
+    private static String message(Matcher matcher, String line) {
+        return matcher.matches() ? matcher.group(2) : line;
+    }
+
+    private synchronized void spill(String line) {
+        if (!this.spill || this.closed || this.spillFailed) {
+            return;
+        }
+        try {
+            if (this.spillWriter == null) {
+                this.spillFile = this.runContext.workingDir().createTempFile(".log");
+                this.spillWriter = Files.newBufferedWriter(this.spillFile, StandardCharsets.UTF_8);
+            }
+            this.spillWriter.write(line);
+            this.spillWriter.newLine();
+        } catch (IOException e) {
+            // Stop spilling but keep what was written so far, it is still uploaded on close
+            this.logger.warn("Unable to spill docker-compose logs, further dropped lines are lost: {}", e.getMessage());
+            this.spillFailed = true;
+            this.closeSpillWriter();
+        }
+    }
+
+    private void closeSpillWriter() {
+        if (this.spillWriter == null) {
+            return;
+        }
+        try {
+            this.spillWriter.close();
+        } catch (IOException e) {
+            this.logger.warn("Unable to close the docker-compose spill file: {}", e.getMessage());
+        }
+        this.spillWriter = null;
+    }
+
+    private void forward() {
+        final Map<String, Batch> batches = new LinkedHashMap<>();
+        try {
+            while (!this.closed || !this.buffer.isEmpty()) {
+                // Bounded wait so that closing doesn't have to wait for a full batch interval
+                final var line = this.buffer.poll(Math.min(this.batchInterval.toNanos(), MAX_POLL_NANOS), TimeUnit.NANOSECONDS);
+                if (line != null) {
+                    final var batch = batches.computeIfAbsent(line.key(), k -> new Batch(line.service(), line.stdErr()));
+                    batch.add(line.message());
+                    if (batch.size >= this.batchSize) {
+                        this.emit(batches.remove(line.key()));
+                    }
+                }
+                final var now = System.nanoTime();
+                batches.values().removeIf(batch -> {
+                    if (now - batch.createdAt < this.batchInterval.toNanos()) {
+                        return false;
+                    }
+                    this.emit(batch);
+                    return true;
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batches.values().forEach(this::emit);
+    }
+
+    private void emit(Batch batch) {
+        this.sink.emit(batch.service, batch.stdErr, batch.lines.toString());
+    }
+
+    private void log(String service, boolean isStdErr, String lines) {
+        if (isStdErr) {
+            this.logger.warn("[{}] {}", service, lines);
+        } else {
+            this.logger.info("[{}] {}", service, lines);
+        }
+    }
+
+    /**
+     * @return the internal storage URI of the dropped lines, once closed, or null if no line was spilled.
+     */
+    URI getSpilled() {
+        return this.spilled;
+    }
+
+    long getDropped() {
+        return this.services.values().stream().mapToLong(stats -> stats.dropped).sum();
+    }
+
+    long getSampled() {
+        return this.services.values().stream().mapToLong(stats -> stats.sampled).sum();
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.closed = true;
+        this.forwarder.join();
+
+        synchronized (this) {
+            this.closeSpillWriter();
+            if (this.spillFile != null) {
+                this.spilled = this.runContext.storage().putFile(this.spillFile.toFile());
+            }
+        }
+        long dropped = 0;
+        long sampled = 0;
+        for (var entry : this.services.entrySet()) {
+            this.runContext.metric(Counter.of("logs.dropped", entry.getValue().dropped, "service", entry.getKey()));
+            this.runContext.metric(Counter.of("logs.sampled", entry.getValue().sampled, "service", entry.getKey()));
+            dropped += entry.getValue().dropped;
+            sampled += entry.getValue().sampled;
+        }
+        if (dropped > 0) {
+            this.logger.warn("{} log lines dropped and {} sampled due to log throttling", dropped, sampled);
+        }
+        if (this.spilled != null) {
+            this.logger.warn("Dropped log lines were written to the `{}` output file", SPILL_FILE);
+        }
+    }
+
+    enum Admission {
+        FORWARDED, SAMPLED, DROPPED
+    }
+
+    private record Line(String service, String message, boolean stdErr) {
+        String key() {
+            return this.service + (this.stdErr ? ":err" : ":out");
+        }
+    }
+
+    static class ServiceStats {
+        private long windowStart = System.nanoTime();
+        private int windowCount;
+        private long overflow;
+        private volatile long sampled;
+        private volatile long dropped;
+
+        synchronized Admission admit(long now, int maxLinesPerSecond, int sampleRatio) {
+            if (now - this.windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                this.windowStart = now;
+                this.windowCount = 0;
+            }
+            if (++this.windowCount <= maxLinesPerSecond) {
+                return Admission.FORWARDED;
+            }
+            if (this.overflow++ % sampleRatio == 0) {
+                this.sampled++;
+                return Admission.SAMPLED;
+            }
+            this.dropped++;
+            return Admission.DROPPED;
+        }
+
+        synchronized void drop() {
+            this.dropped++;
+        }
+    }
+
+    private static class Batch {
+        private final String service;
+        private final boolean stdErr;
+        private final long createdAt = System.nanoTime();
+        private final StringBuilder lines = new StringBuilder();
+        private int size;
+
+        Batch(String service, boolean stdErr) {
+            this.service = service;
+            this.stdErr = stdErr;
+        }
+
+        void add(String message) {
+            if (this.size++ > 0) {
+                this.lines.append('\n');
+            }
+            this.lines.append(message);
+        }
+    }
+}
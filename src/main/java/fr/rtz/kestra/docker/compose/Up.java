@@ -1,5 +1,8 @@
 package fr.rtz.kestra.docker.compose;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.kestra.core.exceptions.IllegalVariableEvaluationException;
 import io.kestra.core.models.annotations.Example;
 import io.kestra.core.models.annotations.Plugin;
@@ -19,6 +22,7 @@ import lombok.experimental.SuperBuilder;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Pattern;
 
 @SuperBuilder
 @ToString
@@ -118,6 +122,24 @@ import java.util.*;
                                 environment:
                                   - FOO=bar
                 """
+        ),
+        @Example(
+            title = "Only recreate the services whose configuration changed, and the services depending on them",
+            full = true,
+            code = """
+                id: up-containers
+                namespace: company.team
+                tasks:
+                  - id: deploy
+                    type: fr.rtz.kestra.docker.compose.Up
+                    detached: true
+                    incremental: true
+                    projectName: my-compose-project
+                    yaml: read('docker-compose.yaml')
+                  - id: log
+                    type: io.kestra.plugin.core.log.Log
+                    message: "Recreated {{ outputs.deploy.vars.recreated }}, started {{ outputs.deploy.vars.started }}, left {{ outputs.deploy.vars.untouched }} untouched"
+                """
         )
     }
 )
@@ -126,6 +148,9 @@ import java.util.*;
 // TODO explore namespace file usage -> Permettre la résolution des configurations de stack
 public class Up extends AbstractDockerCompose implements RunnableTask<ScriptOutput>, InputFilesInterface {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern CONFIG_HASH = Pattern.compile("com\\.docker\\.compose\\.config-hash=([0-9a-f]+)");
+
     @Schema(
         title = "Docker Compose stack definition (YAML).",
         requiredMode = Schema.RequiredMode.REQUIRED
@@ -141,10 +166,23 @@ public class Up extends AbstractDockerCompose implements RunnableTask<ScriptOutp
 
     @Schema(
         title = "Force container creation.",
-        description = "Recreate containers even if their configuration and image haven't changed"
+        description = "Recreate containers even if their configuration and image haven't changed, can't be combined with `incremental`"
     )
     protected Property<Boolean> forceRecreate;
 
+    @Schema(
+        title = "Only recreate the services whose configuration changed.",
+        description = """
+            Compare the configuration hash of each service with the one of its containers, and only recreate the \
+            changed services and the services depending on them, with `--no-deps --force-recreate`. Unchanged services \
+            having containers that are not running, except the ones that exited with code 0, are started in a separate \
+            `--no-deps` call without being recreated, always detached when services are recreated afterwards. Nothing is \
+            done when every service is up to date.
+            The `changed`, `recreated`, `started` and `untouched` services are exposed in the `vars` output.
+            Can't be combined with `forceRecreate`."""
+    )
+    protected Property<Boolean> incremental;
+
     @Schema(
         title = "Wait for services to be up and running",
         description = "Wait for containers to be started before returning"
@@ -162,12 +200,16 @@ public class Up extends AbstractDockerCompose implements RunnableTask<ScriptOutp
     )
     private Property<Map<String, String>> env;
 
+    @Schema(
+        title = "Log forwarding options",
+        description = "Rate limiting, sampling and batching applied to container logs when not running in detached mode"
+    )
+    private LogOptions logs;
+
     private Object inputFiles;
 
     @Override
     public ScriptOutput run(RunContext runContext) throws Exception {
-        final var taskRunner = Process.instance();
-
         final var yaml = runContext.render(this.yaml).as(String.class).orElseThrow();
         runContext.workingDir().createFile("docker-compose.yaml", yaml.getBytes(StandardCharsets.UTF_8));
 
@@ -177,23 +219,192 @@ public class Up extends AbstractDockerCompose implements RunnableTask<ScriptOutp
             runContext.render(this.getEnv()).asMap(String.class, String.class);
         this.appendDockerComposeEnv(runContext, env);
 
-        final var cmds = this.buildCommands(runContext);
+        final var forceRecreate = runContext.render(this.forceRecreate).as(Boolean.class).orElse(false);
+        if (!runContext.render(this.incremental).as(Boolean.class).orElse(false)) {
+            final var detached = runContext.render(this.detached).as(Boolean.class).orElse(false);
+            return this.up(runContext, env, this.buildCommands(runContext, List.of(), forceRecreate, detached), detached);
+        }
+        if (forceRecreate) {
+            throw new IllegalArgumentException("`forceRecreate` can't be combined with `incremental`, which only recreates the changed services");
+        }
+
+        final var changes = this.diff(runContext, env);
+        final Map<String, Object> vars = Map.of(
+            "changed", changes.changed(),
+            "recreated", changes.recreated(),
+            "started", changes.started(),
+            "untouched", changes.untouched()
+        );
+        runContext.logger().info("Changed services: {}, recreating: {}, starting: {}", changes.changed(), changes.recreated(), changes.started());
+        if (changes.recreated().isEmpty() && changes.started().isEmpty()) {
+            runContext.logger().info("Every service is up to date, nothing to do");
+            return ScriptOutput.builder().exitCode(0).vars(vars).build();
+        }
+        final var detached = runContext.render(this.detached).as(Boolean.class).orElse(false);
+        ScriptOutput output = null;
+        // Stopped dependencies first, so that recreated services find them running. Only the last call may attach,
+        // an attached call only returns once its containers exit.
+        if (!changes.started().isEmpty()) {
+            final var detachStarted = detached || !changes.recreated().isEmpty();
+            output = this.up(runContext, env, this.buildCommands(runContext, changes.started(), false, detachStarted), detachStarted);
+        }
+        if (!changes.recreated().isEmpty()) {
+            output = combine(output, this.up(runContext, env, this.buildCommands(runContext, changes.recreated(), true, detached), detached));
+        }
+        return withOutputs(output, vars, Map.of());
+    }
+
+    private ScriptOutput up(RunContext runContext, Map<String, String> env, Property<List<String>> cmds, boolean detached) throws Exception {
         runContext.logger().info("Running: {}", cmds);
-        return new CommandsWrapper(runContext)
+        final var commands = new CommandsWrapper(runContext)
             .withEnv(env)
             .withInputFiles(this.inputFiles)
             .withCommands(cmds)
-            .withTaskRunner(taskRunner)
-            .run();
+            .withTaskRunner(Process.instance());
+        if (detached) {
+            return commands.run();
+        }
+        // Attached mode streams every container log line, throttle them before they reach the log queue
+        return runThrottled(commands, ThrottledLogConsumer.of(runContext, this.logs));
+    }
+
+    /**
+     * @return the second output, with the line counts, variables and output files of the first one added, if any.
+     */
+    private static ScriptOutput combine(ScriptOutput first, ScriptOutput second) {
+        if (first == null) {
+            return second;
+        }
+        final var combined = withOutputs(
+            second,
+            first.getVars() == null ? Map.of() : first.getVars(),
+            first.getOutputFiles() == null ? Map.of() : first.getOutputFiles()
+        );
+        return ScriptOutput.builder()
+            .exitCode(combined.getExitCode())
+            .stdOutLineCount(first.getStdOutLineCount() + second.getStdOutLineCount())
+            .stdErrLineCount(first.getStdErrLineCount() + second.getStdErrLineCount())
+            .warningOnStdErr(combined.getWarningOnStdErr())
+            .taskRunner(combined.getTaskRunner())
+            .vars(combined.getVars())
+            .outputFiles(combined.getOutputFiles())
+            .build();
+    }
+
+    /**
+     * Compares the configuration hash compose computes for each service to the config-hash label of its containers.
+     */
+    private ServiceChanges diff(RunContext ctx, Map<String, String> env) throws Exception {
+        final var hashes = new LinkedHashMap<String, String>();
+        for (String line : this.capture(ctx, env, "config", "--hash=*")) {
+            final var parts = line.trim().split("\\s+");
+            if (parts.length == 2) {
+                hashes.put(parts[0], parts[1]);
+            }
+        }
+
+        final Map<String, Set<String>> dependents = new HashMap<>();
+        final var config = MAPPER.readTree(String.join("\n", this.capture(ctx, env, "config", "--format=json")));
+        config.path("services").fields().forEachRemaining(service -> {
+            final var dependsOn = service.getValue().path("depends_on");
+            final var dependencies = new ArrayList<String>();
+            if (dependsOn.isArray()) {
+                dependsOn.forEach(dependency -> dependencies.add(dependency.asText()));
+            } else {
+                dependsOn.fieldNames().forEachRemaining(dependencies::add);
+            }
+            dependencies.forEach(dependency -> dependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(service.getKey()));
+        });
+
+        final var containers = new ArrayList<ContainerState>();
+        for (String line : this.capture(ctx, env, "ps", "-a", "--format=json")) {
+            final JsonNode node;
+            try {
+                node = MAPPER.readTree(line);
+            } catch (JsonProcessingException e) {
+                continue;
+            }
+            // Older compose versions print a single array instead of one container per line
+            final Iterable<JsonNode> nodes = node.isArray() ? node : List.of(node);
+            for (JsonNode container : nodes) {
+                final var hash = CONFIG_HASH.matcher(container.path("Labels").asText());
+                containers.add(new ContainerState(
+                    container.path("Service").asText(),
+                    hash.find() ? hash.group(1) : "",
+                    container.path("State").asText(),
+                    container.path("ExitCode").isNumber() ? container.path("ExitCode").asInt() : null
+                ));
+            }
+        }
+        return classify(hashes, dependents, containers);
     }
 
-    private Property<List<String>> buildCommands(RunContext ctx) throws IllegalVariableEvaluationException {
+    /**
+     * Classifies the services of the compose file, given their configuration hash, the services depending on each of
+     * them, and the containers of the project.
+     */
+    static ServiceChanges classify(Map<String, String> hashes, Map<String, Set<String>> dependents, List<ContainerState> containers) {
+        final Map<String, Set<String>> containerHashes = new HashMap<>();
+        final Set<String> stopped = new HashSet<>();
+        for (ContainerState container : containers) {
+            containerHashes.computeIfAbsent(container.service(), k -> new HashSet<>()).add(container.configHash());
+            // Containers that exited with code 0 are one-shot jobs that completed, not services to start again
+            final var completed = "exited".equals(container.state()) && Integer.valueOf(0).equals(container.exitCode());
+            if (!"running".equals(container.state()) && !completed) {
+                stopped.add(container.service());
+            }
+        }
+
+        final var changed = hashes.entrySet().stream()
+            .filter(e -> !Set.of(e.getValue()).equals(containerHashes.get(e.getKey())))
+            .map(Map.Entry::getKey)
+            .toList();
+        // Only changes cascade to dependents, stopped services are started without recreating anything
+        final var pending = new ArrayDeque<String>(changed);
+        final var recreated = new HashSet<String>();
+        while (!pending.isEmpty()) {
+            final var service = pending.poll();
+            if (recreated.add(service)) {
+                pending.addAll(dependents.getOrDefault(service, Set.of()));
+            }
+        }
+        return new ServiceChanges(
+            changed,
+            hashes.keySet().stream().filter(recreated::contains).toList(),
+            hashes.keySet().stream().filter(service -> stopped.contains(service) && !recreated.contains(service)).toList(),
+            hashes.keySet().stream().filter(service -> !recreated.contains(service) && !stopped.contains(service)).toList()
+        );
+    }
+
+    private Collection<String> capture(RunContext ctx, Map<String, String> env, String... args) throws Exception {
+        final var cmds = this.initCmd(ctx);
+        cmds.addAll(List.of(args));
+        final var logsConsumer = new DockerComposeLogConsumer();
+        this.execute(ctx, env, this.inputFiles, cmds, logsConsumer);
+        return logsConsumer.getStdOutLines();
+    }
+
+    /**
+     * @param configHash hash of the configuration the container was created with, empty when unknown
+     */
+    record ContainerState(String service, String configHash, String state, Integer exitCode) {
+    }
+
+    record ServiceChanges(List<String> changed, List<String> recreated, List<String> started, List<String> untouched) {
+    }
+
+    private Property<List<String>> buildCommands(RunContext ctx, List<String> services, boolean forceRecreate, boolean detached) throws IllegalVariableEvaluationException {
         var array = this.initCmd(ctx);
         array.add("up");
-        if (ctx.render(this.detached).as(Boolean.class).orElse(false)) {
+        if (detached) {
             array.add("--detach");
         }
-        if (ctx.render(this.forceRecreate).as(Boolean.class).orElse(false)) {
+        if (!services.isEmpty()) {
+            // Only the given services are brought up, the diff already selected the ones needing it
+            array.add("--no-deps");
+        }
+        if (forceRecreate) {
+            // Dependents of changed services have an unchanged hash, compose wouldn't recreate them on its own
             array.add("--force-recreate");
         }
         if (ctx.render(this.wait).as(Boolean.class).orElse(false)) {
@@ -203,6 +414,7 @@ public class Up extends AbstractDockerCompose implements RunnableTask<ScriptOutp
             array.add("--wait-timeout");
             array.add(String.valueOf(ctx.render(this.waitTimeout).as(Integer.class).orElseThrow()));
         }
+        array.addAll(services);
         return Property.of(array);
     }
 }
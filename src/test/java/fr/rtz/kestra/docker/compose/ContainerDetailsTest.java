@@ -0,0 +1,68 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * Enriches containers from a stubbed Docker Engine, no Docker daemon is needed.
+ */
+@KestraTest
+class ContainerDetailsTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void enrich() throws Exception {
+        final var restarts = new AtomicInteger();
+        try (var engine = new StubDockerEngine()
+            .on("GET", "/containers/details-running/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of(
+                "Image", "sha256:details",
+                "RestartCount", restarts.getAndIncrement(),
+                "State", Map.of("StartedAt", "2026-01-01T00:00:00Z", "OOMKilled", false),
+                "NetworkSettings", Map.of("Ports", Map.of("80/tcp", List.of(Map.of("HostIp", "0.0.0.0", "HostPort", "8080"))))
+            )))
+            .on("GET", "/containers/details-exited/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of(
+                "Image", "sha256:details",
+                "RestartCount", 0,
+                "State", Map.of("StartedAt", "2026-01-01T00:00:00Z", "OOMKilled", true)
+            )))
+            .on("GET", "/images/sha256:details/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of(
+                "RepoDigests", List.of("nginx@sha256:0123")
+            )))) {
+            final var containers = List.of(
+                Ps.Output.ContainerInfo.builder().id("details-running").state("running").build(),
+                Ps.Output.ContainerInfo.builder().id("details-exited").state("exited").exitCode(137).build()
+            );
+
+            final var first = ContainerDetails.enrich(this.runContextFactory.of(Map.of()), engine.host(), containers, Duration.ofMinutes(5));
+            assertThat(first.get(0).getImageId(), is("sha256:details"));
+            assertThat(first.get(0).getRepoDigests(), is(List.of("nginx@sha256:0123")));
+            assertThat(first.get(0).getPorts(), is(List.of("0.0.0.0:8080->80/tcp")));
+            assertThat(first.get(0).getRestartCount(), is(0));
+            assertThat(first.get(0).getUptime(), notNullValue());
+            assertThat(first.get(1).getOomKilled(), is(true));
+
+            // A restart keeps the id and state of the running container, which is inspected again
+            final var second = ContainerDetails.enrich(this.runContextFactory.of(Map.of()), engine.host(), containers, Duration.ofMinutes(5));
+            assertThat(second.get(0).getRestartCount(), is(1));
+            assertThat(second.get(1).getOomKilled(), is(true));
+
+            // The stopped container and the image were only inspected once, every poll using a single connection
+            assertThat(engine.requests().stream().map(StubDockerEngine.Request::path).filter(p -> p.equals("/containers/details-running/json")).count(), is(2L));
+            assertThat(engine.requests().stream().map(StubDockerEngine.Request::path).filter(p -> p.equals("/containers/details-exited/json")).count(), is(1L));
+            assertThat(engine.requests().stream().map(StubDockerEngine.Request::path).filter(p -> p.startsWith("/images/")).count(), is(1L));
+            assertThat(engine.connections(), is(2));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package fr.rtz.kestra.docker.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+class ContainerFilterTest {
+
+    private final List<Ps.Output.ContainerInfo> containers = List.of(
+        container("api-1", "api", "running", "healthy", 0),
+        container("api-2", "api", "exited", "", 137),
+        container("worker-1", "worker", "exited", "", 0),
+        container("db-1", "db", "running", "unhealthy", 0)
+    );
+
+    @Test
+    void filterByStateAndExitCodeRange() {
+        final var filter = ContainerFilter.builder()
+            .states(List.of("EXITED"))
+            .exitCodes(List.of("1-255"))
+            .build();
+
+        final var matched = filter.filter(this.containers);
+        assertThat(matched.stream().map(Ps.Output.ContainerInfo::getName).toList(), contains("api-2"));
+        assertThat(filter.isSatisfiedBy(matched), is(true));
+    }
+
+    @Test
+    void filterByHealthAndService() {
+        final var filter = ContainerFilter.builder()
+            .healths(List.of("none", "unhealthy"))
+            .service("(api|db)")
+            .minCount(3)
+            .build();
+
+        final var matched = filter.filter(this.containers);
+        assertThat(matched.stream().map(Ps.Output.ContainerInfo::getName).toList(), contains("api-2", "db-1"));
+        assertThat(filter.isSatisfiedBy(matched), is(false));
+    }
+
+    @Test
+    void invalidCriteria() {
+        assertThat(ContainerFilter.builder().service("api-(").build().isValid(), is(false));
+        assertThat(ContainerFilter.builder().exitCodes(List.of("one")).build().isValid(), is(false));
+        assertThat(ContainerFilter.builder().exitCodes(List.of("255-1")).build().isValid(), is(false));
+        assertThat(ContainerFilter.builder().service("api-.*").exitCodes(List.of("1-255")).build().isValid(), is(true));
+    }
+
+    private static Ps.Output.ContainerInfo container(String name, String service, String state, String health, int exitCode) {
+        return Ps.Output.ContainerInfo.builder()
+            .id(name)
+            .name(name)
+            .service(service)
+            .state(state)
+            .health(health)
+            .exitCode(exitCode)
+            .build();
+    }
+}
@@ -0,0 +1,141 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Offline Docker daemon simulator: a fake `docker-compose` binary, copied from the test resources, and a stub Engine API.
+ * Every project has the same services and replicas, every command and API call takes the configured latency and may fail.
+ */
+class DockerSimulator implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Settings settings;
+    private final Path directory;
+    private final StubDockerEngine engine;
+
+    /**
+     * @param services       number of services of every project
+     * @param replicas       number of replicas of every service
+     * @param latency        time spent by every compose command and Engine API call
+     * @param failureRate    probability of a compose command or Engine API call failing
+     * @param transitionRate probability of a container being reported as exited by a `ps` call, changing the project state between polls
+     */
+    record Settings(int services, int replicas, Duration latency, double failureRate, double transitionRate) {
+    }
+
+    private DockerSimulator(Settings settings) throws IOException {
+        this.settings = settings;
+        this.directory = Files.createTempDirectory("docker-simulator");
+        final var binary = this.directory.resolve("docker-compose");
+        try (var script = DockerSimulator.class.getClassLoader().getResourceAsStream("simulator/docker-compose")) {
+            Files.copy(script, binary);
+        }
+        Files.setPosixFilePermissions(binary, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.writeString(this.directory.resolve("simulator.conf"), String.join("\n",
+            "SERVICES=" + settings.services(),
+            "REPLICAS=" + settings.replicas(),
+            "LATENCY_MS=" + settings.latency().toMillis(),
+            "FAILURE_RATE=" + Math.round(settings.failureRate() * 1000),
+            "TRANSITION_RATE=" + Math.round(settings.transitionRate() * 1000),
+            ""
+        ));
+
+        this.engine = new StubDockerEngine()
+            .on("GET", "/containers/json", (request, path) -> this.reply(StubDockerEngine.Reply.json(200, this.containers(request))))
+            .on("POST", "/containers/([^/]+)/exec", (request, path) -> this.reply(StubDockerEngine.Reply.json(201, Map.of("Id", "exec-" + path.group(1)))))
+            .on("POST", "/exec/[^/]+/start", (request, path) -> this.reply(StubDockerEngine.Reply.stream(
+                "application/vnd.docker.multiplexed-stream",
+                StubDockerEngine.frame(MultiplexedStream.STDOUT, "simulated output\n")
+            )))
+            .on("GET", "/exec/[^/]+/json", (request, path) -> this.reply(StubDockerEngine.Reply.json(200, Map.of("ExitCode", 0))));
+    }
+
+    static DockerSimulator start(Settings settings) throws IOException {
+        return new DockerSimulator(settings);
+    }
+
+    String composeBinary() {
+        return this.directory.resolve("docker-compose").toString();
+    }
+
+    String dockerHost() {
+        return this.engine.host();
+    }
+
+    StubDockerEngine engine() {
+        return this.engine;
+    }
+
+    private StubDockerEngine.Reply reply(StubDockerEngine.Reply reply) throws IOException {
+        if (ThreadLocalRandom.current().nextDouble() < this.settings.failureRate()) {
+            reply = StubDockerEngine.Reply.json(500, Map.of("message", "simulated failure"));
+        }
+        return reply.delayed(this.settings.latency().toMillis());
+    }
+
+    /**
+     * Lists the containers of the project and service given in the label filters of the request.
+     */
+    private List<Map<String, Object>> containers(StubDockerEngine.Request request) throws IOException {
+        String project = "project";
+        String service = null;
+        for (String parameter : request.query().split("&")) {
+            if (!parameter.startsWith("filters=")) {
+                continue;
+            }
+            final var filters = MAPPER.readTree(URLDecoder.decode(parameter.substring("filters=".length()), StandardCharsets.UTF_8));
+            for (var label : filters.path("label")) {
+                final var value = label.asText();
+                if (value.startsWith(AbstractDockerCompose.PROJECT_LABEL + "=")) {
+                    project = value.substring(AbstractDockerCompose.PROJECT_LABEL.length() + 1);
+                } else if (value.startsWith(AbstractDockerCompose.SERVICE_LABEL + "=")) {
+                    service = value.substring(AbstractDockerCompose.SERVICE_LABEL.length() + 1);
+                }
+            }
+        }
+        final var containers = new ArrayList<Map<String, Object>>();
+        for (var s = 1; s <= this.settings.services(); s++) {
+            if (service != null && !service.equals("svc" + s)) {
+                continue;
+            }
+            for (var r = 1; r <= this.settings.replicas(); r++) {
+                final var name = project + "-svc" + s + "-" + r;
+                containers.add(Map.of(
+                    "Id", name,
+                    "Names", List.of("/" + name),
+                    "Labels", Map.of(
+                        AbstractDockerCompose.PROJECT_LABEL, project,
+                        AbstractDockerCompose.SERVICE_LABEL, "svc" + s,
+                        AbstractDockerCompose.CONTAINER_NUMBER_LABEL, String.valueOf(r)
+                    )
+                ));
+            }
+        }
+        return containers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.engine.close();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
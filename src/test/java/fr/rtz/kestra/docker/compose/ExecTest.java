@@ -0,0 +1,94 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the Exec task against a stubbed Docker Engine, no Docker daemon is needed.
+ */
+@KestraTest
+class ExecTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    private static StubDockerEngine stub(int failingReplica) throws Exception {
+        return new StubDockerEngine()
+            .on("GET", "/containers/json", (request, path) -> StubDockerEngine.Reply.json(200, List.of(
+                container("c1", 1),
+                container("c2", 2),
+                container("c3", 3)
+            )))
+            .on("POST", "/containers/(c\\d)/exec", (request, path) -> StubDockerEngine.Reply.json(201, Map.of("Id", "exec-" + path.group(1))))
+            .on("POST", "/exec/exec-c\\d/start", (request, path) -> StubDockerEngine.Reply.stream(
+                "application/vnd.docker.multiplexed-stream",
+                StubDockerEngine.frame(MultiplexedStream.STDOUT, "first line\nsecond "),
+                StubDockerEngine.frame(MultiplexedStream.STDOUT, "line\n"),
+                StubDockerEngine.frame(MultiplexedStream.STDERR, "warning\n")
+            ))
+            .on("GET", "/exec/exec-c(\\d)/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of(
+                "ExitCode", Integer.parseInt(path.group(1)) == failingReplica ? 1 : 0
+            )));
+    }
+
+    private static Map<String, Object> container(String id, int number) {
+        return Map.of(
+            "Id", id,
+            "Names", List.of("/project-web-" + number),
+            "Labels", Map.of("com.docker.compose.container-number", String.valueOf(number))
+        );
+    }
+
+    @Test
+    void run() throws Exception {
+        try (var engine = stub(-1)) {
+            final var task = Exec.builder()
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .service(new Property<>("web"))
+                .replicas(Property.of(List.of(1, 3)))
+                .commands(Property.of(List.of("echo", "hello")))
+                .parallelism(new Property<>("2"))
+                .build();
+
+            final var output = task.run(this.runContextFactory.of(Map.of()));
+            assertThat(output.getReplicas(), hasSize(2));
+            for (var replica : output.getReplicas()) {
+                assertThat(replica.getExitCode(), is(0));
+                assertThat(replica.getStdOutLineCount(), is(2));
+                assertThat(replica.getStdErrLineCount(), is(1));
+            }
+            final var execCreate = engine.requests().stream()
+                .filter(r -> r.path().endsWith("/exec"))
+                .findFirst()
+                .orElseThrow();
+            assertThat(execCreate.json().get("Cmd").get(1).asText(), is("hello"));
+        }
+    }
+
+    @Test
+    void failingReplica() throws Exception {
+        try (var engine = stub(2)) {
+            final var task = Exec.builder()
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .service(new Property<>("web"))
+                .commands(Property.of(List.of("false")))
+                .build();
+
+            final var exception = assertThrows(IllegalStateException.class, () -> task.run(this.runContextFactory.of(Map.of())));
+            assertThat(exception.getMessage(), containsString("project-web-2 exited with code 1"));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import io.kestra.core.utils.TestsUtils;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Load tests running the plugin at scale against the offline {@link DockerSimulator}, excluded from the default
+ * test task. Run them with `./gradlew loadTest`; throughput, latency percentiles and heap usage are logged.
+ * Tasks and triggers are invoked directly, concurrently, so the measures exclude the executor and queues overhead.
+ */
+@KestraTest
+@Tag("load")
+class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private static final int TRIGGERS = 300;
+    private static final int DEPLOYMENTS = 100;
+    private static final int CONCURRENCY = 16;
+    private static final String YAML = """
+        services:
+          svc1:
+            image: simulator
+        """;
+
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void psTriggers() throws Exception {
+        final var settings = new DockerSimulator.Settings(10, 3, Duration.ofMillis(20), 0.01, 0.02);
+        try (var simulator = DockerSimulator.start(settings)) {
+            final var report = this.run("Ps.evaluate", TRIGGERS, index -> {
+                final var trigger = Ps.builder()
+                    .id("ps-" + index)
+                    .type(Ps.class.getName())
+                    .projectName(Property.of("project-" + index))
+                    .composeBinary(Property.of(simulator.composeBinary()))
+                    .adaptiveInterval(true)
+                    // Only satisfied when every container was listed and parsed
+                    .filter(ContainerFilter.builder()
+                        .states(List.of("running", "exited"))
+                        .minCount(settings.services() * settings.replicas())
+                        .build())
+                    .build();
+                final var context = TestsUtils.mockTrigger(this.runContextFactory, trigger);
+                // A failed compose call doesn't fail the evaluation, it just doesn't trigger
+                return trigger.evaluate(context.getKey(), context.getValue())
+                    .orElseThrow(() -> new IllegalStateException("Trigger " + index + " didn't list the containers"));
+            });
+            assertThat(report.succeeded(), greaterThan(TRIGGERS / 2));
+        }
+    }
+
+    @Test
+    void upDown() throws Exception {
+        try (var simulator = DockerSimulator.start(new DockerSimulator.Settings(5, 2, Duration.ofMillis(50), 0.01, 0))) {
+            final var report = this.run("Up/Down", DEPLOYMENTS, index -> {
+                final var projectName = Property.of("project-" + index);
+                Up.builder()
+                    .id("up-" + index)
+                    .type(Up.class.getName())
+                    .projectName(projectName)
+                    .composeBinary(Property.of(simulator.composeBinary()))
+                    .yaml(Property.of(YAML))
+                    .detached(Property.of(true))
+                    .build()
+                    .run(this.runContextFactory.of(Map.of()));
+                Down.builder()
+                    .id("down-" + index)
+                    .type(Down.class.getName())
+                    .projectName(projectName)
+                    .composeBinary(Property.of(simulator.composeBinary()))
+                    .build()
+                    .run(this.runContextFactory.of(Map.of()));
+                return null;
+            });
+            assertThat(report.succeeded(), greaterThan(DEPLOYMENTS / 2));
+        }
+    }
+
+    @Test
+    void exec() throws Exception {
+        try (var simulator = DockerSimulator.start(new DockerSimulator.Settings(5, 4, Duration.ofMillis(5), 0.001, 0))) {
+            final var report = this.run("Exec", DEPLOYMENTS, index -> Exec.builder()
+                .id("exec-" + index)
+                .type(Exec.class.getName())
+                .projectName(Property.of("project-" + index))
+                .dockerHost(Property.of(simulator.dockerHost()))
+                .service(Property.of("svc" + (index % 5 + 1)))
+                .commands(Property.of(List.of("true")))
+                .build()
+                .run(this.runContextFactory.of(Map.of())));
+            assertThat(report.succeeded(), greaterThan(DEPLOYMENTS / 2));
+            logger.info("Exec: {} Engine API requests over {} connections", simulator.engine().requests().size(), simulator.engine().connections());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        Object run(int index) throws Exception;
+    }
+
+    /**
+     * Runs the operation the given number of times, {@link #CONCURRENCY} at a time, and logs the measures.
+     */
+    private Report run(String name, int count, Operation operation) throws Exception {
+        final var memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        final var heapBefore = memory.getHeapMemoryUsage().getUsed();
+        final var latencies = new ConcurrentLinkedQueue<Long>();
+        final var failures = new AtomicInteger();
+        final var peakHeap = new AtomicInteger();
+
+        final var start = System.nanoTime();
+        try (var executor = Executors.newFixedThreadPool(CONCURRENCY)) {
+            final var futures = new ArrayList<Future<?>>();
+            for (var i = 0; i < count; i++) {
+                final var index = i;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    final var operationStart = System.nanoTime();
+                    try {
+                        operation.run(index);
+                        latencies.add(System.nanoTime() - operationStart);
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    peakHeap.accumulateAndGet((int) (memory.getHeapMemoryUsage().getUsed() >> 20), Math::max);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        final var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        final var sorted = latencies.stream().sorted().toList();
+        final var report = new Report(sorted.size(), failures.get());
+        logger.info(
+            "{}: {} ok, {} failed in {} ({} op/s), latency p50={}ms p95={}ms p99={}ms, heap before={}MiB peak={}MiB after={}MiB",
+            name,
+            report.succeeded(),
+            report.failed(),
+            elapsed,
+            String.format("%.1f", count * 1000.0 / Math.max(1, elapsed.toMillis())),
+            percentile(sorted, 50),
+            percentile(sorted, 95),
+            percentile(sorted, 99),
+            heapBefore >> 20,
+            peakHeap.get(),
+            memory.getHeapMemoryUsage().getUsed() >> 20
+        );
+        return report;
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        final var index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return Duration.ofNanos(sorted.get(Math.max(0, index))).toMillis();
+    }
+
+    private record Report(int succeeded, int failed) {
+    }
+}
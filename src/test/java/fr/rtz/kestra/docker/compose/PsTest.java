@@ -0,0 +1,65 @@
+package fr.rtz.kestra.docker.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class PsTest {
+    private static final Duration MIN = Duration.ofSeconds(10);
+    private static final Duration MAX = Duration.ofSeconds(60);
+
+    @Test
+    void firstPollStartsAtMinInterval() {
+        assertThat(Ps.nextPollState(null, "a", MIN, MAX).interval(), is(MIN));
+    }
+
+    @Test
+    void backOffWhileUnchangedUpToMaxInterval() {
+        var state = Ps.nextPollState(null, "a", MIN, MAX);
+        state = Ps.nextPollState(state, "a", MIN, MAX);
+        assertThat(state.interval(), is(Duration.ofSeconds(20)));
+        state = Ps.nextPollState(state, "a", MIN, MAX);
+        assertThat(state.interval(), is(Duration.ofSeconds(40)));
+        state = Ps.nextPollState(state, "a", MIN, MAX);
+        assertThat(state.interval(), is(MAX));
+        state = Ps.nextPollState(state, "a", MIN, MAX);
+        assertThat(state.interval(), is(MAX));
+    }
+
+    @Test
+    void resetOnTransitionOrFailedPoll() {
+        final var backedOff = new Ps.PollState("a", MAX);
+        assertThat(Ps.nextPollState(backedOff, "b", MIN, MAX).interval(), is(MIN));
+        assertThat(Ps.nextPollState(backedOff, null, MIN, MAX).interval(), is(MIN));
+        // A failed poll isn't a known snapshot, the next successful one resets again
+        assertThat(Ps.nextPollState(new Ps.PollState(null, MIN), null, MIN, MAX).interval(), is(MIN));
+    }
+
+    @Test
+    void followRevisedBounds() {
+        assertThat(Ps.nextPollState(new Ps.PollState("a", Duration.ofSeconds(2)), "a", MIN, MAX).interval(), is(MIN));
+        assertThat(Ps.nextPollState(new Ps.PollState("a", Duration.ofHours(1)), "a", MIN, MAX).interval(), is(MAX));
+    }
+
+    @Test
+    void rejectMinIntervalAboveMaxInterval() {
+        final var valid = Ps.builder().adaptiveInterval(true).minInterval(MIN).maxInterval(MAX).build();
+        assertThat(valid.isIntervalRangeValid(), is(true));
+        final var inverted = Ps.builder().adaptiveInterval(true).minInterval(MAX).maxInterval(MIN).build();
+        assertThat(inverted.isIntervalRangeValid(), is(false));
+        // The default interval is above the maximum
+        final var defaulted = Ps.builder().adaptiveInterval(true).maxInterval(MIN).build();
+        assertThat(defaulted.isIntervalRangeValid(), is(false));
+        // Bounds are only used in adaptive mode
+        assertThat(Ps.builder().minInterval(MAX).maxInterval(MIN).build().isIntervalRangeValid(), is(true));
+    }
+
+    @Test
+    void pollStateRoundTrip() {
+        final var state = new Ps.PollState("a", Duration.ofSeconds(40));
+        assertThat(Ps.PollState.of(state.toMap()), is(state));
+    }
+}
@@ -0,0 +1,67 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Restores volumes to a stubbed Docker Engine, archives being uploaded with chunked transfer encoding.
+ */
+@KestraTest
+class RestoreTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        final var content = new byte[200_000];
+        new Random(42).nextBytes(content);
+        final var gzipped = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(content);
+        }
+
+        try (var engine = new StubDockerEngine()
+            .on("GET", "/volumes", (request, path) -> StubDockerEngine.Reply.json(200, Map.of("Volumes", List.of())))
+            .on("POST", "/volumes/create", (request, path) -> StubDockerEngine.Reply.json(201, Map.of("Name", "project_data")))
+            .on("GET", "/images/[^/]+/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of("Id", "sha256:busybox")))
+            .on("POST", "/containers/create", (request, path) -> StubDockerEngine.Reply.json(201, Map.of("Id", "helper")))
+            .on("PUT", "/containers/helper/archive", (request, path) -> StubDockerEngine.Reply.empty(200))
+            .on("DELETE", "/containers/helper", (request, path) -> StubDockerEngine.Reply.empty(204))) {
+            final var runContext = this.runContextFactory.of(Map.of());
+            final var uri = runContext.storage().putFile(new ByteArrayInputStream(gzipped.toByteArray()), "data.tar.gz");
+
+            final var output = Restore.builder()
+                .id("restore")
+                .type(Restore.class.getName())
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .snapshots(Property.of(Map.of("data", uri.toString())))
+                .build()
+                .run(runContext);
+
+            assertThat(output.getSize(), is((long) content.length));
+            assertThat(output.getVolumes().getFirst().getVolume(), is("project_data"));
+            final var created = engine.requests().stream().filter(r -> r.path().equals("/volumes/create")).findFirst().orElseThrow();
+            assertThat(created.json().path("Labels").path(AbstractDockerCompose.PROJECT_LABEL).asText(), is("project"));
+            final var upload = engine.requests().stream().filter(r -> r.method().equals("PUT")).findFirst().orElseThrow();
+            assertThat(upload.headers().get("Transfer-Encoding"), is("chunked"));
+            assertThat(upload.body(), is(content));
+            // Uploads use a connection of their own, which is then reused to remove the helper
+            assertThat(engine.requests().size(), is(6));
+            assertThat(engine.connections(), is(2));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package fr.rtz.kestra.docker.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScaleTest {
+
+    @Test
+    void surgeOnly() {
+        final var plan = Scale.plan(3, 3, 1, 0);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(0, 4, 1, 1),
+            new Scale.BatchPlan(0, 4, 1, 1),
+            new Scale.BatchPlan(0, 4, 1, 1)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+        assertBounds(plan, 3, 3, 1, 0);
+    }
+
+    @Test
+    void unavailableOnly() {
+        final var plan = Scale.plan(3, 3, 0, 1);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(1, 3, 1, 0),
+            new Scale.BatchPlan(1, 3, 1, 0),
+            new Scale.BatchPlan(1, 3, 1, 0)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+        assertBounds(plan, 3, 3, 0, 1);
+    }
+
+    @Test
+    void surgeAndUnavailable() {
+        final var plan = Scale.plan(5, 5, 2, 1);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(1, 7, 3, 2),
+            new Scale.BatchPlan(1, 6, 2, 1)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+        assertBounds(plan, 5, 5, 2, 1);
+    }
+
+    @Test
+    void scaleUp() {
+        final var plan = Scale.plan(2, 4, 1, 0);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(0, 5, 3, 1),
+            new Scale.BatchPlan(0, 5, 1, 1)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+        assertBounds(plan, 2, 4, 1, 0);
+    }
+
+    @Test
+    void scaleDown() {
+        final var plan = Scale.plan(3, 1, 1, 0);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(0, null, 0, 2),
+            new Scale.BatchPlan(0, 2, 1, 1)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+        assertBounds(plan, 3, 1, 1, 0);
+    }
+
+    @Test
+    void scaleToZero() {
+        final var plan = Scale.plan(3, 0, 0, 2);
+
+        assertThat(plan.batches(), contains(
+            new Scale.BatchPlan(2, null, 0, 1)
+        ));
+        assertThat(plan.finalReplicas(), nullValue());
+    }
+
+    @Test
+    void invalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> Scale.plan(3, 3, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> Scale.plan(3, 3, -1, 1));
+        assertThrows(IllegalArgumentException.class, () -> Scale.plan(3, -1, 1, 0));
+    }
+
+    /**
+     * Replays the plan, checking the number of replicas stays within target - maxUnavailable and target + maxSurge
+     * while replacing replicas, and that every old replica is replaced by the target.
+     */
+    private static void assertBounds(Scale.RollingPlan plan, int old, int target, int maxSurge, int maxUnavailable) {
+        var fresh = 0;
+        for (Scale.BatchPlan batch : plan.batches()) {
+            old -= batch.removeBefore();
+            assertThat(old + fresh, greaterThanOrEqualTo(Math.min(target, old + fresh + batch.removeBefore()) - maxUnavailable));
+            fresh += batch.created();
+            if (batch.scaleTo() != null) {
+                assertThat(batch.scaleTo(), is(old + fresh));
+            }
+            assertThat(old + fresh, lessThanOrEqualTo(Math.max(target, old + fresh - batch.created()) + maxSurge));
+            old -= batch.removeAfter();
+        }
+        assertThat(old, is(0));
+        assertThat(plan.finalReplicas() == null ? fresh : plan.finalReplicas(), is(target));
+    }
+
+    @Test
+    void plansAreBounded() {
+        for (int old : List.of(1, 2, 5, 8)) {
+            for (int target : List.of(0, 1, 3, 8)) {
+                for (int surge = 0; surge <= 3; surge++) {
+                    for (int unavailable = 0; unavailable <= 3; unavailable++) {
+                        if (surge + unavailable > 0) {
+                            assertBounds(Scale.plan(old, target, surge, unavailable), old, target, surge, unavailable);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
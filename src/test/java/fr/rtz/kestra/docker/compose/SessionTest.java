@@ -0,0 +1,87 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs a session of Exec steps against a stubbed Docker Engine, no Docker daemon is needed.
+ */
+@KestraTest
+class SessionTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    @Test
+    void run() throws Exception {
+        try (var engine = new StubDockerEngine()
+            .on("GET", "/containers/json", (request, path) -> StubDockerEngine.Reply.json(200, List.of(Map.of(
+                "Id", "c1",
+                "Names", List.of("/project-web-1"),
+                "Labels", Map.of("com.docker.compose.container-number", "1")
+            ))))
+            .on("POST", "/containers/c1/exec", (request, path) -> StubDockerEngine.Reply.json(201, Map.of("Id", "exec-c1")))
+            .on("POST", "/exec/exec-c1/start", (request, path) -> StubDockerEngine.Reply.stream(
+                "application/vnd.docker.multiplexed-stream",
+                StubDockerEngine.frame(MultiplexedStream.STDOUT, "done\n")
+            ))
+            .on("GET", "/exec/exec-c1/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of("ExitCode", 0)))) {
+            final var task = Session.builder()
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .steps(List.of(
+                    Exec.builder()
+                        .id("migrate")
+                        .type(Exec.class.getName())
+                        .service(new Property<>("web"))
+                        .commands(Property.of(List.of("migrate")))
+                        .build(),
+                    Exec.builder()
+                        .id("seed")
+                        .type(Exec.class.getName())
+                        .service(new Property<>("web"))
+                        .commands(Property.of(List.of("seed")))
+                        .build()
+                ))
+                .build();
+
+            final var output = task.run(this.runContextFactory.of(Map.of()));
+            assertThat(output.getSteps().stream().map(Session.StepResult::getId).toList(), contains("migrate", "seed"));
+            assertThat(output.getOutputs().keySet(), contains("migrate", "seed"));
+            // Only the attached exec streams, which are close delimited, need a connection of their own
+            assertThat(engine.requests().size(), is(8));
+            assertThat(engine.connections(), lessThan(engine.requests().size()));
+        }
+    }
+
+    @Test
+    void rejectFlowLevelProperties() {
+        final var task = Session.builder()
+            .projectName(new Property<>("project"))
+            .steps(List.of(
+                Exec.builder()
+                    .id("migrate")
+                    .type(Exec.class.getName())
+                    .service(new Property<>("web"))
+                    .commands(Property.of(List.of("migrate")))
+                    .allowFailure(true)
+                    .build()
+            ))
+            .build();
+
+        final var exception = assertThrows(IllegalArgumentException.class, () -> task.run(this.runContextFactory.of(Map.of())));
+        assertThat(exception.getMessage(), containsString("allowFailure"));
+    }
+}
@@ -0,0 +1,93 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.models.property.Property;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Snapshots volumes from a stubbed Docker Engine streaming archives with chunked transfer encoding.
+ */
+@KestraTest
+class SnapshotTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    private static final byte[] ARCHIVE = new byte[200_000];
+
+    static {
+        new Random(42).nextBytes(ARCHIVE);
+    }
+
+    private static StubDockerEngine engine() throws Exception {
+        return new StubDockerEngine()
+            .on("GET", "/volumes", (request, path) -> StubDockerEngine.Reply.json(200, Map.of("Volumes", List.of(Map.of(
+                "Name", "project_data",
+                "Labels", Map.of(AbstractVolumeTask.VOLUME_LABEL, "data")
+            )))))
+            .on("GET", "/images/[^/]+/json", (request, path) -> StubDockerEngine.Reply.json(200, Map.of("Id", "sha256:busybox")))
+            .on("POST", "/containers/create", (request, path) -> StubDockerEngine.Reply.json(201, Map.of("Id", "helper")))
+            .on("GET", "/containers/helper/archive", (request, path) -> StubDockerEngine.Reply.chunked("application/x-tar", ARCHIVE, 7_000))
+            .on("DELETE", "/containers/helper", (request, path) -> StubDockerEngine.Reply.empty(204));
+    }
+
+    @Test
+    void run() throws Exception {
+        try (var engine = engine()) {
+            final var runContext = this.runContextFactory.of(Map.of());
+            final var output = Snapshot.builder()
+                .id("snapshot")
+                .type(Snapshot.class.getName())
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .build()
+                .run(runContext);
+
+            assertThat(output.getChecksums(), is(Map.of("data", sha256(ARCHIVE))));
+            assertThat(output.getSize(), is((long) ARCHIVE.length));
+            try (var archive = new GZIPInputStream(runContext.storage().getFile(output.getSnapshots().get("data")))) {
+                assertThat(archive.readAllBytes(), is(ARCHIVE));
+            }
+            // Every request, including the ones following the chunked archive, went through the same connection
+            assertThat(engine.requests().size(), is(5));
+            assertThat(engine.connections(), is(1));
+        }
+    }
+
+    @Test
+    void incrementalCarriesPreviousArchives() throws Exception {
+        try (var engine = engine()) {
+            final var previous = "kestra:///company/team/flow/executions/previous/data.tar.gz";
+            final var output = Snapshot.builder()
+                .id("snapshot")
+                .type(Snapshot.class.getName())
+                .dockerHost(new Property<>(engine.host()))
+                .projectName(new Property<>("project"))
+                .incremental(Property.of(true))
+                .previousChecksums(Property.of(Map.of("data", sha256(ARCHIVE))))
+                .previousSnapshots(Property.of(Map.of("data", previous)))
+                .build()
+                .run(this.runContextFactory.of(Map.of()));
+
+            assertThat(output.getVolumes().getFirst().getSkipped(), is(true));
+            assertThat(output.getSnapshots().get("data").toString(), is(previous));
+            // The archive was only read once, to compute its checksum
+            assertThat(engine.requests().stream().filter(r -> r.path().endsWith("/archive")).count(), is(1L));
+        }
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
@@ -0,0 +1,242 @@
+package fr.rtz.kestra.docker.compose;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Docker Engine API stub, serving canned responses over a local TCP socket to be used as `dockerHost`.
+ */
+class StubDockerEngine implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ServerSocket server;
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    StubDockerEngine() throws IOException {
+        this.server = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("stub-docker-engine").start(this::acceptLoop);
+    }
+
+    String host() {
+        return "tcp://127.0.0.1:" + this.server.getLocalPort();
+    }
+
+    List<Request> requests() {
+        return this.requests;
+    }
+
+    int connections() {
+        return this.connections.get();
+    }
+
+    StubDockerEngine on(String method, String pathPattern, Handler handler) {
+        this.routes.add(new Route(method, Pattern.compile(pathPattern), handler));
+        return this;
+    }
+
+    /**
+     * @return a frame of the multiplexed stream used by attached exec sessions.
+     */
+    static byte[] frame(int stream, String payload) {
+        final var bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + bytes.length)
+            .put((byte) stream)
+            .put(new byte[3])
+            .putInt(bytes.length)
+            .put(bytes)
+            .array();
+    }
+
+    private void acceptLoop() {
+        while (!this.server.isClosed()) {
+            try {
+                final var socket = this.server.accept();
+                this.connections.incrementAndGet();
+                Thread.ofVirtual().start(() -> this.serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serves requests on a kept alive connection, until a close delimited reply or the client closes it.
+     */
+    private void serve(Socket socket) {
+        try (socket) {
+            final var in = new BufferedInputStream(socket.getInputStream());
+            final var out = socket.getOutputStream();
+            while (true) {
+                final var request = Request.read(in);
+                if (request == null) {
+                    return;
+                }
+                this.requests.add(request);
+                final var reply = this.reply(request);
+                reply.write(out);
+                if (reply.framing() == Framing.CLOSE) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            // The client went away
+        }
+    }
+
+    private Reply reply(Request request) throws Exception {
+        for (Route route : this.routes) {
+            final var matcher = route.path().matcher(request.path());
+            if (route.method().equals(request.method()) && matcher.matches()) {
+                return route.handler().handle(request, matcher);
+            }
+        }
+        return Reply.json(404, Map.of("message", "no stub for " + request.method() + " " + request.path()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+    }
+
+    @FunctionalInterface
+    interface Handler {
+        Reply handle(Request request, Matcher path) throws Exception;
+    }
+
+    private record Route(String method, Pattern path, Handler handler) {
+    }
+
+    record Request(String method, String path, String query, Map<String, String> headers, byte[] body) {
+        JsonNode json() throws IOException {
+            return MAPPER.readTree(this.body);
+        }
+
+        /**
+         * @return the next request, null when the client closed the connection.
+         */
+        static Request read(InputStream in) throws IOException {
+            final var first = readLine(in);
+            if (first.isEmpty()) {
+                return null;
+            }
+            final var requestLine = first.split(" ");
+            final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            String line;
+            while (!(line = readLine(in)).isEmpty()) {
+                final var separator = line.indexOf(':');
+                headers.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            }
+            final var body = new ByteArrayOutputStream();
+            if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+                int size;
+                while ((size = Integer.parseInt(readLine(in).trim(), 16)) > 0) {
+                    body.write(in.readNBytes(size));
+                    readLine(in);
+                }
+                readLine(in);
+            } else if (headers.containsKey("Content-Length")) {
+                body.write(in.readNBytes(Integer.parseInt(headers.get("Content-Length"))));
+            }
+            final var target = requestLine[1].split("\\?", 2);
+            return new Request(requestLine[0], target[0], target.length > 1 ? target[1] : "", headers, body.toByteArray());
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            final var line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != '\n' && b >= 0) {
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * How the end of a reply body is signaled: Content-Length, closed connection or chunked transfer encoding.
+     */
+    enum Framing {
+        LENGTH,
+        CLOSE,
+        CHUNKED
+    }
+
+    /**
+     * @param chunkSize size of the chunks of a chunked reply
+     */
+    record Reply(int status, String contentType, byte[] body, Framing framing, int chunkSize, long delayMillis) {
+        static Reply json(int status, Object body) throws IOException {
+            return new Reply(status, "application/json", MAPPER.writeValueAsBytes(body), Framing.LENGTH, 0, 0);
+        }
+
+        static Reply empty(int status) {
+            return new Reply(status, "text/plain", new byte[0], Framing.LENGTH, 0, 0);
+        }
+
+        static Reply stream(String contentType, byte[]... chunks) {
+            final var body = new ByteArrayOutputStream();
+            for (byte[] chunk : chunks) {
+                body.writeBytes(chunk);
+            }
+            return new Reply(200, contentType, body.toByteArray(), Framing.CLOSE, 0, 0);
+        }
+
+        static Reply chunked(String contentType, byte[] body, int chunkSize) {
+            return new Reply(200, contentType, body, Framing.CHUNKED, chunkSize, 0);
+        }
+
+        Reply delayed(long millis) {
+            return new Reply(this.status, this.contentType, this.body, this.framing, this.chunkSize, millis);
+        }
+
+        void write(OutputStream out) throws IOException, InterruptedException {
+            if (this.delayMillis > 0) {
+                Thread.sleep(this.delayMillis);
+            }
+            final var head = new StringBuilder("HTTP/1.1 ").append(this.status).append(" STUB\r\n")
+                .append("Content-Type: ").append(this.contentType).append("\r\n");
+            switch (this.framing) {
+                case LENGTH -> head.append("Content-Length: ").append(this.body.length).append("\r\n");
+                case CLOSE -> head.append("Connection: close\r\n");
+                case CHUNKED -> head.append("Transfer-Encoding: chunked\r\n");
+            }
+            head.append("\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+            if (this.framing == Framing.CHUNKED) {
+                for (var offset = 0; offset < this.body.length; offset += this.chunkSize) {
+                    final var length = Math.min(this.chunkSize, this.body.length - offset);
+                    out.write((Integer.toHexString(length) + ";stub=1\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(this.body, offset, length);
+                    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                }
+                // Last chunk with a trailer, which the client must skip to reuse the connection
+                out.write("0\r\nX-Stub-Trailer: 1\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                out.write(this.body);
+            }
+            out.flush();
+        }
+    }
+}
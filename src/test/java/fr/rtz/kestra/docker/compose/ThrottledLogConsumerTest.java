@@ -0,0 +1,98 @@
+package fr.rtz.kestra.docker.compose;
+
+import io.kestra.core.junit.annotations.KestraTest;
+import io.kestra.core.runners.RunContextFactory;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@KestraTest
+class ThrottledLogConsumerTest {
+    @Inject
+    private RunContextFactory runContextFactory;
+
+    private record Emitted(String service, boolean isStdErr, String lines) {
+    }
+
+    @Test
+    void rateLimitAndSampling() {
+        final var stats = new ThrottledLogConsumer.ServiceStats();
+        final var start = System.nanoTime();
+        final var admissions = new ArrayList<ThrottledLogConsumer.Admission>();
+        for (var i = 0; i < 30; i++) {
+            admissions.add(stats.admit(start, 10, 5));
+        }
+        assertThat(admissions.subList(0, 10), everyItem(is(ThrottledLogConsumer.Admission.FORWARDED)));
+        // One out of 5 overflowing lines is sampled
+        assertThat(admissions.stream().filter(a -> a == ThrottledLogConsumer.Admission.SAMPLED).count(), is(4L));
+        assertThat(admissions.stream().filter(a -> a == ThrottledLogConsumer.Admission.DROPPED).count(), is(16L));
+
+        // A new window forwards lines again
+        assertThat(stats.admit(start + TimeUnit.SECONDS.toNanos(1), 10, 5), is(ThrottledLogConsumer.Admission.FORWARDED));
+    }
+
+    @Test
+    void batchesPerServiceAndStream() throws Exception {
+        final var emitted = new CopyOnWriteArrayList<Emitted>();
+        final var consumer = new ThrottledLogConsumer(this.runContextFactory.of(Map.of()), 1000, 1, 3, Duration.ofMinutes(1), 100, false,
+            (service, isStdErr, lines) -> emitted.add(new Emitted(service, isStdErr, lines)));
+        for (var i = 0; i < 4; i++) {
+            consumer.accept("web-1  | line " + i, false);
+        }
+        consumer.accept("db-1  | error", true);
+        consumer.close();
+
+        assertThat(emitted, contains(
+            new Emitted("web", false, "line 0\nline 1\nline 2"),
+            new Emitted("web", false, "line 3"),
+            new Emitted("db", true, "error")
+        ));
+        assertThat(consumer.getSpilled(), nullValue());
+    }
+
+    @Test
+    void spillDroppedLines() throws Exception {
+        final var runContext = this.runContextFactory.of(Map.of());
+        final var emitted = new CopyOnWriteArrayList<Emitted>();
+        final var consumer = new ThrottledLogConsumer(runContext, 10, 1000, 100, Duration.ofMillis(50), 100, true,
+            (service, isStdErr, lines) -> emitted.add(new Emitted(service, isStdErr, lines)));
+        for (var i = 0; i < 50; i++) {
+            consumer.accept("web-1  | line " + i, false);
+        }
+        consumer.close();
+
+        // 10 lines forwarded, the first overflowing one sampled, the others dropped
+        assertThat(consumer.getSampled(), is(1L));
+        assertThat(consumer.getDropped(), is(39L));
+        try (var reader = new BufferedReader(new InputStreamReader(runContext.storage().getFile(consumer.getSpilled()), StandardCharsets.UTF_8))) {
+            final List<String> spilled = reader.lines().toList();
+            assertThat(spilled, hasSize(39));
+            assertThat(spilled, everyItem(startsWith("web-1  | line ")));
+        }
+    }
+
+    @Test
+    void rejectZeroBatchInterval() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new ThrottledLogConsumer(this.runContextFactory.of(Map.of()), 10, 10, 10, Duration.ZERO, 10, false)
+        );
+    }
+}
@@ -0,0 +1,78 @@
+package fr.rtz.kestra.docker.compose;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+class UpTest {
+
+    @Test
+    void classify() {
+        final var hashes = new LinkedHashMap<String, String>();
+        hashes.put("db", "h1");
+        hashes.put("api", "h2");
+        hashes.put("web", "h3");
+        hashes.put("migrate", "h4");
+        hashes.put("worker", "h5");
+        hashes.put("new", "h6");
+        hashes.put("mixed", "h7");
+        final var dependents = Map.of("db", Set.of("api"), "api", Set.of("web"));
+
+        final var changes = Up.classify(hashes, dependents, List.of(
+            // Changed, cascading to api then web
+            new Up.ContainerState("db", "h0", "running", 0),
+            new Up.ContainerState("api", "h2", "running", 0),
+            // Stopped, but recreated as a dependent of a changed service
+            new Up.ContainerState("web", "h3", "exited", 1),
+            // One-shot job that completed
+            new Up.ContainerState("migrate", "h4", "exited", 0),
+            // Stopped and unchanged
+            new Up.ContainerState("worker", "h5", "exited", 137),
+            // Replicas created with different configurations
+            new Up.ContainerState("mixed", "h7", "running", 0),
+            new Up.ContainerState("mixed", "h0", "running", 0)
+        ));
+
+        // A service without container is new
+        assertThat(changes.changed(), contains("db", "new", "mixed"));
+        assertThat(changes.recreated(), contains("db", "api", "web", "new", "mixed"));
+        assertThat(changes.started(), contains("worker"));
+        assertThat(changes.untouched(), contains("migrate"));
+    }
+
+    @Test
+    void stoppedServicesDontCascade() {
+        final var hashes = new LinkedHashMap<String, String>();
+        hashes.put("db", "h1");
+        hashes.put("api", "h2");
+
+        final var changes = Up.classify(hashes, Map.of("db", Set.of("api")), List.of(
+            new Up.ContainerState("db", "h1", "exited", 1),
+            new Up.ContainerState("api", "h2", "running", 0)
+        ));
+
+        assertThat(changes.changed(), empty());
+        assertThat(changes.recreated(), empty());
+        assertThat(changes.started(), contains("db"));
+        assertThat(changes.untouched(), contains("api"));
+    }
+
+    @Test
+    void upToDate() {
+        final var changes = Up.classify(Map.of("web", "h1"), Map.of(), List.of(
+            new Up.ContainerState("web", "h1", "running", 0),
+            new Up.ContainerState("web", "h1", "running", 0)
+        ));
+
+        assertThat(changes.recreated(), empty());
+        assertThat(changes.started(), empty());
+        assertThat(changes.untouched(), contains("web"));
+    }
+}